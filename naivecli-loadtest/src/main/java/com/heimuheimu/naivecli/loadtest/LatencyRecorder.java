@@ -0,0 +1,99 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heimuheimu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.heimuheimu.naivecli.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * 响应时间记录器，记录每次命令的响应纳秒数，用于计算响应时间分位数。
+ *
+ * <p><strong>说明：</strong>{@code LatencyRecorder} 类是非线程安全的，每个客户端线程应使用独立的实例，统计前通过 {@link #merge(LatencyRecorder)} 合并。</p>
+ *
+ * @author heimuheimu
+ */
+public class LatencyRecorder {
+
+    /**
+     * 已记录的响应纳秒数
+     */
+    private long[] latencies = new long[1024];
+
+    /**
+     * 已记录的数量
+     */
+    private int size = 0;
+
+    /**
+     * 记录一次命令的响应纳秒数。
+     *
+     * @param latencyNanos 响应纳秒数
+     */
+    public void record(long latencyNanos) {
+        if (size == latencies.length) {
+            latencies = Arrays.copyOf(latencies, size * 2);
+        }
+        latencies[size++] = latencyNanos;
+    }
+
+    /**
+     * 将另一个记录器中的数据合并到当前记录器中。
+     *
+     * @param other 另一个记录器
+     */
+    public void merge(LatencyRecorder other) {
+        for (int i = 0; i < other.size; i++) {
+            record(other.latencies[i]);
+        }
+    }
+
+    /**
+     * 获得已记录的数量。
+     *
+     * @return 已记录的数量
+     */
+    public int getCount() {
+        return size;
+    }
+
+    /**
+     * 获得指定分位数的响应毫秒数，调用该方法前需要先调用 {@link #sort()} 方法。
+     *
+     * @param percentile 分位数，取值范围为 [0, 100]
+     * @return 响应毫秒数，如果没有记录，则返回 0
+     */
+    public double getPercentileMillis(double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * size) - 1;
+        return latencies[Math.min(Math.max(index, 0), size - 1)] / 1000000.0;
+    }
+
+    /**
+     * 对已记录的响应时间进行排序。
+     */
+    public void sort() {
+        Arrays.sort(latencies, 0, size);
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heimuheimu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.heimuheimu.naivecli.loadtest;
+
+import com.heimuheimu.naivecli.NaiveCommandLineUtilities;
+import com.heimuheimu.naivecli.command.NaiveCommandExecutor;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * NaiveCli 压力测试工具，启动一个使用 {@link StubCommands} 的内嵌 {@link NaiveCommandLineUtilities}，
+ * 并模拟指定数量的并发客户端按权重随机执行命令，测试结束后输出吞吐量、响应时间分位数以及服务端线程数与堆内存的增长情况。
+ *
+ * <p>
+ * 参数格式为 {@code key=value}，支持的参数：
+ * <ul>
+ *     <li>{@code port}：内嵌服务监听端口，默认为 4183</li>
+ *     <li>{@code connections}：并发客户端数量，默认为 100</li>
+ *     <li>{@code maxSessions}：服务端允许的最大 Session 数量，默认与并发客户端数量相同</li>
+ *     <li>{@code duration}：测试持续秒数，默认为 10</li>
+ *     <li>{@code pipeline}：每个客户端连续发送的命令数量，发送完成后再依次读取响应，默认为 1，即不使用流水线</li>
+ *     <li>{@code mix}：命令组合，格式为 "命令*权重"，多个命令以 ";" 分隔，默认为 "ping*1;echo hello*5;list 100*1;list 10000 | grep 99 | head 5*1"，
+ *     除 "ping" 外不支持 Session 内置命令（"quit"、"more"、"next"、"batch"、"!"）</li>
+ *     <li>{@code timeout}：客户端读取响应的超时毫秒数，超时将被计为错误并结束该客户端，小于等于 0 时使用默认值 5000</li>
+ * </ul>
+ * 打包后的 jar 不包含依赖，需通过 {@code -cp} 指定 naivecli 及 slf4j 等依赖的类路径，示例：
+ * {@code java -cp target/classes:<依赖类路径> com.heimuheimu.naivecli.loadtest.NaiveCliLoadTest connections=500 duration=30 pipeline=8 "mix=ping*1;echo hi*3"}
+ * </p>
+ *
+ * @author heimuheimu
+ */
+public class NaiveCliLoadTest {
+
+    private static final String DEFAULT_MIX = "ping*1;echo hello*5;list 100*1;list 10000 | grep 99 | head 5*1";
+
+    private final int port;
+
+    private final int connections;
+
+    private final int maxSessions;
+
+    private final int durationSeconds;
+
+    private final int pipeline;
+
+    private final int readTimeoutMillis;
+
+    /**
+     * 按权重展开后的命令列表，客户端从中随机选取命令
+     */
+    private final List<String> weightedCommandList = new ArrayList<>();
+
+    /**
+     * 命令对应的响应行数
+     */
+    private final Map<String, Integer> responseLinesMap = new HashMap<>();
+
+    private final AtomicLong errorCount = new AtomicLong();
+
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private final AtomicLong rejectedConnectionCount = new AtomicLong();
+
+    /**
+     * 构造一个压力测试工具。
+     *
+     * @param options 测试参数
+     * @throws IllegalArgumentException 如果命令组合为空或包含不支持的 Session 内置命令，将抛出此异常
+     */
+    public NaiveCliLoadTest(Map<String, String> options) {
+        this.port = Integer.parseInt(options.getOrDefault("port", "4183"));
+        this.connections = Integer.parseInt(options.getOrDefault("connections", "100"));
+        this.maxSessions = Integer.parseInt(options.getOrDefault("maxSessions", String.valueOf(connections)));
+        this.durationSeconds = Integer.parseInt(options.getOrDefault("duration", "10"));
+        this.pipeline = Math.max(Integer.parseInt(options.getOrDefault("pipeline", "1")), 1);
+        int timeout = Integer.parseInt(options.getOrDefault("timeout", "5000"));
+        //超时时间为 0 时 Socket 将无限等待，不允许使用
+        this.readTimeoutMillis = timeout > 0 ? timeout : 5000;
+        NaiveCommandExecutor localExecutor = new NaiveCommandExecutor(StubCommands.getAll());
+        for (String item : options.getOrDefault("mix", DEFAULT_MIX).split(";")) {
+            int weightIndex = item.lastIndexOf('*');
+            String command = (weightIndex > 0 ? item.substring(0, weightIndex) : item).trim().toLowerCase();
+            int weight = weightIndex > 0 ? Integer.parseInt(item.substring(weightIndex + 1).trim()) : 1;
+            if (command.isEmpty() || weight <= 0) {
+                continue;
+            }
+            //响应行数由本地命令执行器计算，Session 内置命令的响应行数无法预知
+            String commandName = command.split(" ", 2)[0];
+            if (command.startsWith("!") || (!commandName.equals("ping")
+                    && NaiveCommandExecutor.RESERVED_COMMAND_NAMES.contains(commandName))) {
+                throw new IllegalArgumentException("Unsupported command in mix: `" + command
+                        + "`. Session built-in commands except `ping` are not supported.");
+            }
+            if (!responseLinesMap.containsKey(command)) {
+                responseLinesMap.put(command, command.equals("ping") ? 1 : localExecutor.execute(command).size());
+            }
+            for (int i = 0; i < weight; i++) {
+                weightedCommandList.add(command);
+            }
+        }
+        if (weightedCommandList.isEmpty()) {
+            throw new IllegalArgumentException("Command mix is empty.");
+        }
+    }
+
+    /**
+     * 执行压力测试，并将测试报告输出至标准输出。
+     *
+     * @throws Exception 如果测试过程中发生错误，将抛出此异常
+     */
+    public void run() throws Exception {
+        ResourceMonitor monitor = new ResourceMonitor();
+        monitor.sample();
+        long baselineThreads = monitor.maxThreads;
+        long baselineHeapBytes = monitor.maxHeapBytes;
+
+        NaiveCommandLineUtilities utilities = new NaiveCommandLineUtilities(port, StubCommands.getAll(), maxSessions, 0);
+        utilities.init();
+        monitor.start();
+
+        CountDownLatch readyLatch = new CountDownLatch(connections);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<ClientThread> clientThreadList = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            ClientThread clientThread = new ClientThread(readyLatch, startLatch);
+            clientThread.setName("[NaiveCliLoadTest-Client]:" + i);
+            clientThread.setDaemon(true);
+            clientThreadList.add(clientThread);
+            clientThread.start();
+        }
+        readyLatch.await();
+        long startTime = System.nanoTime();
+        long deadline = startTime + durationSeconds * 1000000000L;
+        for (ClientThread clientThread : clientThreadList) {
+            clientThread.deadline = deadline;
+        }
+        startLatch.countDown();
+        LatencyRecorder recorder = new LatencyRecorder();
+        for (ClientThread clientThread : clientThreadList) {
+            clientThread.join();
+            recorder.merge(clientThread.recorder);
+        }
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1000000000.0;
+
+        monitor.stopSignal = true;
+        monitor.join();
+        long closeStartTime = System.currentTimeMillis();
+        utilities.close();
+        long closeCost = System.currentTimeMillis() - closeStartTime;
+        System.gc();
+        long heapAfterCloseBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+        recorder.sort();
+        System.out.printf("Connections: %d (rejected: %d). Max sessions: %d. Pipeline: %d. Duration: %.2fs.%n",
+                connections, rejectedConnectionCount.get(), maxSessions, pipeline, elapsedSeconds);
+        System.out.printf("Commands: %d. Errors: %d (timeouts: %d, read timeout: %dms). Throughput: %.1f commands/s.%n",
+                recorder.getCount(), errorCount.get(), timeoutCount.get(), readTimeoutMillis, recorder.getCount() / elapsedSeconds);
+        System.out.printf("Latency(ms): p50=%.3f, p90=%.3f, p99=%.3f, p99.9=%.3f, max=%.3f.%n",
+                recorder.getPercentileMillis(50), recorder.getPercentileMillis(90), recorder.getPercentileMillis(99),
+                recorder.getPercentileMillis(99.9), recorder.getPercentileMillis(100));
+        System.out.printf("Server threads: baseline=%d, peak=%d, peak session threads=%d.%n",
+                baselineThreads, monitor.maxThreads, monitor.maxSessionThreads);
+        System.out.printf("Heap used(MB): baseline=%.1f, peak=%.1f, after close=%.1f. Close cost: %dms.%n",
+                baselineHeapBytes / 1048576.0, monitor.maxHeapBytes / 1048576.0, heapAfterCloseBytes / 1048576.0, closeCost);
+    }
+
+    /**
+     * 模拟一个命令行客户端，按权重随机执行命令，直至测试结束。
+     */
+    private class ClientThread extends Thread {
+
+        private final CountDownLatch readyLatch;
+
+        private final CountDownLatch startLatch;
+
+        private final LatencyRecorder recorder = new LatencyRecorder();
+
+        private volatile long deadline;
+
+        private ClientThread(CountDownLatch readyLatch, CountDownLatch startLatch) {
+            this.readyLatch = readyLatch;
+            this.startLatch = startLatch;
+        }
+
+        @Override
+        public void run() {
+            Socket socket = null;
+            try {
+                socket = new Socket("127.0.0.1", port);
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(readTimeoutMillis);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+                readyLatch.countDown();
+                startLatch.await();
+                String[] commands = new String[pipeline];
+                long[] sendTimes = new long[pipeline];
+                while (System.nanoTime() < deadline) {
+                    for (int i = 0; i < pipeline; i++) {
+                        commands[i] = weightedCommandList.get(ThreadLocalRandom.current().nextInt(weightedCommandList.size()));
+                        sendTimes[i] = System.nanoTime();
+                        writer.write(commands[i]);
+                        writer.newLine();
+                    }
+                    writer.flush();
+                    for (int i = 0; i < pipeline; i++) {
+                        int responseLines = responseLinesMap.get(commands[i]);
+                        for (int j = 0; j < responseLines; j++) {
+                            String line = reader.readLine();
+                            if (line == null) {
+                                errorCount.incrementAndGet();
+                                return;
+                            } else if (line.startsWith("Too many sessions")) {
+                                rejectedConnectionCount.incrementAndGet();
+                                return;
+                            }
+                        }
+                        recorder.record(System.nanoTime() - sendTimes[i]);
+                    }
+                }
+                writer.write("quit");
+                writer.newLine();
+                writer.flush();
+            } catch (SocketTimeoutException e) {
+                timeoutCount.incrementAndGet();
+                errorCount.incrementAndGet();
+            } catch (Exception e) {
+                errorCount.incrementAndGet();
+            } finally {
+                if (readyLatch.getCount() > 0) {
+                    readyLatch.countDown();
+                }
+                if (socket != null) {
+                    try {
+                        socket.close();
+                    } catch (IOException ignored) {}
+                }
+            }
+        }
+    }
+
+    /**
+     * 定时采样 JVM 线程数及堆内存使用量，记录测试过程中的峰值。
+     */
+    private static class ResourceMonitor extends Thread {
+
+        private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        private final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+
+        private volatile boolean stopSignal = false;
+
+        private volatile long maxThreads = 0;
+
+        private volatile long maxSessionThreads = 0;
+
+        private volatile long maxHeapBytes = 0;
+
+        private ResourceMonitor() {
+            setName("[NaiveCliLoadTest-ResourceMonitor]");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!stopSignal) {
+                sample();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void sample() {
+            long sessionThreads = 0;
+            long serverThreads = 0;
+            for (ThreadInfo threadInfo : threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds())) {
+                if (threadInfo != null && !threadInfo.getThreadName().startsWith("[NaiveCliLoadTest")) {
+                    serverThreads++;
+                    if (threadInfo.getThreadName().startsWith("NaiveCliSession-")) {
+                        sessionThreads++;
+                    }
+                }
+            }
+            maxThreads = Math.max(maxThreads, serverThreads);
+            maxSessionThreads = Math.max(maxSessionThreads, sessionThreads);
+            maxHeapBytes = Math.max(maxHeapBytes, memoryMXBean.getHeapMemoryUsage().getUsed());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (index > 0) {
+                options.put(arg.substring(0, index), arg.substring(index + 1));
+            } else {
+                System.err.println("Invalid argument: `" + arg + "`. Argument format: key=value.");
+                return;
+            }
+        }
+        NaiveCliLoadTest loadTest;
+        try {
+            loadTest = new NaiveCliLoadTest(options);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid argument: `" + e.getMessage() + "`.");
+            return;
+        }
+        loadTest.run();
+    }
+}
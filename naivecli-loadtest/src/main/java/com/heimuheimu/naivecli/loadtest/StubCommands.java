@@ -0,0 +1,146 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heimuheimu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.heimuheimu.naivecli.loadtest;
+
+import com.heimuheimu.naivecli.command.NaiveCommand;
+
+import java.util.*;
+
+/**
+ * 压力测试使用的桩命令，输出内容固定，便于客户端按行数判断响应是否结束。
+ *
+ * @author heimuheimu
+ */
+public class StubCommands {
+
+    private StubCommands() {
+        //prevent construct this class
+    }
+
+    /**
+     * 获得全部桩命令列表。
+     *
+     * @return 桩命令列表
+     */
+    public static List<NaiveCommand> getAll() {
+        return Arrays.asList(new EchoCommand(), new ListCommand(), new SleepCommand());
+    }
+
+    /**
+     * 输出命令参数，使用方式：{@code echo [text]}。
+     */
+    public static class EchoCommand implements NaiveCommand {
+
+        @Override
+        public String getName() {
+            return "echo";
+        }
+
+        @Override
+        public String getArgumentDescription() {
+            return "[text]";
+        }
+
+        @Override
+        public List<String> execute(String[] args) {
+            return Collections.singletonList(String.join(" ", args));
+        }
+    }
+
+    /**
+     * 输出指定行数的内容，使用方式：{@code list <lines>}，输出内容按需生成。
+     */
+    public static class ListCommand implements NaiveCommand {
+
+        @Override
+        public String getName() {
+            return "list";
+        }
+
+        @Override
+        public String getArgumentDescription() {
+            return "<lines>";
+        }
+
+        @Override
+        public boolean isHeavy() {
+            return true;
+        }
+
+        @Override
+        public List<String> execute(String[] args) {
+            List<String> outputList = new ArrayList<>();
+            executeLazily(args).forEachRemaining(outputList::add);
+            return outputList;
+        }
+
+        @Override
+        public Iterator<String> executeLazily(String[] args) {
+            int lines = Integer.parseInt(args[0]);
+            return new Iterator<String>() {
+
+                private int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return index < lines;
+                }
+
+                @Override
+                public String next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return "key-" + (index++);
+                }
+            };
+        }
+    }
+
+    /**
+     * 休眠指定毫秒数后输出 "ok"，用于模拟执行较慢的命令，使用方式：{@code sleep <millis>}。
+     */
+    public static class SleepCommand implements NaiveCommand {
+
+        @Override
+        public String getName() {
+            return "sleep";
+        }
+
+        @Override
+        public String getArgumentDescription() {
+            return "<millis>";
+        }
+
+        @Override
+        public List<String> execute(String[] args) {
+            try {
+                Thread.sleep(Long.parseLong(args[0]));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.singletonList("ok");
+        }
+    }
+}
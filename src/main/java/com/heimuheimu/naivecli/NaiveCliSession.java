@@ -24,6 +24,7 @@
 
 package com.heimuheimu.naivecli;
 
+import com.heimuheimu.naivecli.command.NaiveCommandBatch;
 import com.heimuheimu.naivecli.command.NaiveCommandExecutor;
 import com.heimuheimu.naivecli.constant.BeanStatusEnum;
 import com.heimuheimu.naivecli.socket.TextualSocket;
@@ -31,11 +32,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * 与命令行工具调用方建立的 Session，通过 Socket 进行通信。
@@ -49,10 +58,42 @@ public class NaiveCliSession implements Closeable {
     private static final AtomicLong THREAD_NUMBER = new AtomicLong();
 
     /**
-     * 当前实例所处状态
+     * 每个 Session 保留的最大历史命令数量
+     */
+    private static final int MAX_HISTORY_SIZE = 100;
+
+    private static final AtomicReferenceFieldUpdater<NaiveCliSession, BeanStatusEnum> STATE_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(NaiveCliSession.class, BeanStatusEnum.class, "state");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<NaiveCliSession, Iterator> CURSOR_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(NaiveCliSession.class, Iterator.class, "cursor");
+
+    /**
+     * 尚未输出的内容因闲置超时被释放后使用的游标标记（独立实例，不会与命令输出的迭代器相同），执行新命令时将被替换
+     */
+    private static final Iterator<String> RELEASED_CURSOR = new ArrayList<String>(0).iterator();
+
+    /**
+     * 当前实例所处状态，通过 {@link #STATE_UPDATER} 进行状态变更，关闭操作无需加锁
      */
     private volatile BeanStatusEnum state = BeanStatusEnum.UNINITIALIZED;
 
+    /**
+     * 是否处于排空状态，处于排空状态的 Session 在当前命令执行完成后将会自动关闭
+     */
+    private volatile boolean draining = false;
+
+    /**
+     * IO 线程是否正在执行命令
+     */
+    private volatile boolean executing = false;
+
+    /**
+     * Session 关闭后释放的门闩，用于等待 Session 关闭
+     */
+    private final CountDownLatch closeLatch = new CountDownLatch(1);
+
     /**
      * Session 上一次活跃时间
      */
@@ -73,20 +114,72 @@ public class NaiveCliSession implements Closeable {
      */
     private volatile TextualSocket textualSocket;
 
+    /**
+     * 命令输出的分页行数，如果小于等于 0，则不进行分页
+     */
+    private final int pageSize;
+
+    /**
+     * 上一次执行命令尚未输出的内容，通过 "more" 或 "next N" 命令继续输出，仅在 IO 线程中写入，
+     * 闲置释放时通过 {@link #CURSOR_UPDATER} 替换为 {@link #RELEASED_CURSOR}
+     */
+    private volatile Iterator<String> cursor = null;
+
+    /**
+     * 批量执行脚本中并行组使用的线程池，如果为 {@code null}，则并行组在 IO 线程中依次执行
+     */
+    private final ExecutorService batchExecutorService;
+
+    /**
+     * 最近执行的命令历史，最多保留 {@link #MAX_HISTORY_SIZE} 条，仅在 IO 线程中读写
+     */
+    private final ArrayDeque<HistoryEntry> historyDeque = new ArrayDeque<>();
+
+    /**
+     * 最后一条历史命令的序号
+     */
+    private int lastHistoryNumber = 0;
+
     /**
      * IO 线程
      */
     private IoThread ioThread;
 
     /**
-     * 构造一个与命令行工具调用方建立的 Session。
+     * 构造一个与命令行工具调用方建立的 Session，命令输出不进行分页。
      *
      * @param socket 与调用方建立的 Socket 连接
      * @param naiveCommandExecutor 命令执行器
      */
     public NaiveCliSession(Socket socket, NaiveCommandExecutor naiveCommandExecutor) {
+        this(socket, naiveCommandExecutor, 0);
+    }
+
+    /**
+     * 构造一个与命令行工具调用方建立的 Session。
+     *
+     * @param socket 与调用方建立的 Socket 连接
+     * @param naiveCommandExecutor 命令执行器
+     * @param pageSize 命令输出的分页行数，如果小于等于 0，则不进行分页
+     */
+    public NaiveCliSession(Socket socket, NaiveCommandExecutor naiveCommandExecutor, int pageSize) {
+        this(socket, naiveCommandExecutor, pageSize, null);
+    }
+
+    /**
+     * 构造一个与命令行工具调用方建立的 Session。
+     *
+     * @param socket 与调用方建立的 Socket 连接
+     * @param naiveCommandExecutor 命令执行器
+     * @param pageSize 命令输出的分页行数，如果小于等于 0，则不进行分页
+     * @param batchExecutorService 批量执行脚本中并行组使用的线程池，如果为 {@code null}，则并行组依次执行
+     */
+    public NaiveCliSession(Socket socket, NaiveCommandExecutor naiveCommandExecutor, int pageSize,
+                           ExecutorService batchExecutorService) {
         this.socket = socket;
         this.executor = naiveCommandExecutor;
+        this.pageSize = pageSize;
+        this.batchExecutorService = batchExecutorService;
     }
 
     /**
@@ -102,7 +195,7 @@ public class NaiveCliSession implements Closeable {
                     long threadNumber = THREAD_NUMBER.incrementAndGet();
                     ioThread.setName("NaiveCliSession-" + threadNumber  + "-" + socket.getInetAddress().getCanonicalHostName());
                     ioThread.start();
-                    state = BeanStatusEnum.NORMAL;
+                    STATE_UPDATER.compareAndSet(this, BeanStatusEnum.UNINITIALIZED, BeanStatusEnum.NORMAL);
                     LOGGER.info("NaiveCliSession has benn initialized. Thread number: `{}`. Socket: `{}`.", threadNumber, socket);
                 } else {
                     LOGGER.error("NaiveCliSession init failed: `Socket is not connected or has been closed`. Socket: `{}`.", socket);
@@ -115,25 +208,74 @@ public class NaiveCliSession implements Closeable {
         }
     }
 
+    /**
+     * 立即关闭当前 Session，正在执行的命令输出将会被中断。该方法不会加锁，可在任意线程中调用。
+     */
     @Override
-    public synchronized void close() {
-        if (state != BeanStatusEnum.CLOSED) {
+    public void close() {
+        if (STATE_UPDATER.getAndSet(this, BeanStatusEnum.CLOSED) != BeanStatusEnum.CLOSED) {
             long startTime = System.currentTimeMillis();
-            state = BeanStatusEnum.CLOSED;
+            cursor = null;
             try {
                 //关闭Socket连接
                 socket.close();
                 //停止IO线程
-                ioThread.stopSignal = true;
-                ioThread.interrupt();
+                if (ioThread != null) {
+                    ioThread.stopSignal = true;
+                    ioThread.interrupt();
+                }
                 LOGGER.info("NaiveCliSession has been closed. Cost: {}ms. Socket: `{}`.",
                         (System.currentTimeMillis() - startTime), socket);
             } catch (Exception e) {
                 LOGGER.error("Close NaiveCliSession failed. Unexpected error. Socket: `" + socket + "`.", e);
+            } finally {
+                closeLatch.countDown();
             }
         }
     }
 
+    /**
+     * 将当前 Session 切换为排空状态：如果当前没有正在执行的命令，将立即关闭，否则在当前命令输出完成后关闭。
+     * 该方法不会等待 Session 关闭，可通过 {@link #awaitClose(long)} 方法进行等待。
+     */
+    public void drain() {
+        draining = true;
+        if (!executing) {
+            close();
+        }
+    }
+
+    /**
+     * 等待当前 Session 关闭，最多等待指定的毫秒数。
+     *
+     * @param timeoutMillis 最多等待的毫秒数
+     * @return 当前 Session 是否已关闭
+     * @throws InterruptedException 如果等待过程中线程被中断，将抛出此异常
+     */
+    public boolean awaitClose(long timeoutMillis) throws InterruptedException {
+        return closeLatch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 如果当前 Session 没有正在执行的命令，且闲置秒数已达到指定值，则释放上一次执行命令尚未输出的内容，
+     * 不影响 Session 本身。该方法不会加锁，可在任意线程中调用。
+     *
+     * @param cursorIdleSeconds 尚未输出的内容允许保留的最大闲置秒数，如果小于等于 0，则不进行释放
+     * @return 是否释放了尚未输出的内容
+     */
+    public boolean releaseIdleCursor(int cursorIdleSeconds) {
+        Iterator<String> currentCursor = cursor;
+        if (cursorIdleSeconds > 0 && currentCursor != null && currentCursor != RELEASED_CURSOR
+                && !executing && getIdleSeconds() >= cursorIdleSeconds) {
+            //仅释放闲置时的游标，如果 IO 线程已执行新的命令，游标已被替换，不会被误释放
+            if (CURSOR_UPDATER.compareAndSet(this, currentCursor, RELEASED_CURSOR)) {
+                LOGGER.debug("Release idle cursor. Idle seconds: `{}`. Socket: `{}`.", getIdleSeconds(), socket);
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 判断当前 Session 是否活跃。
      *
@@ -157,10 +299,158 @@ public class NaiveCliSession implements Closeable {
         return "NaiveCliSession{" +
                 "state=" + state +
                 ", lastActiveTime=" + lastActiveTime +
+                ", pageSize=" + pageSize +
                 ", socket=" + socket +
                 '}';
     }
 
+    /**
+     * 执行单条命令，并输出第一页内容。
+     *
+     * @param command 命令内容
+     * @throws IOException 如果输出过程中发生错误，则抛出此异常
+     */
+    private void executeCommand(String command) throws IOException {
+        cursor = executor.executeLazily(command);
+        writeNextPage(pageSize > 0 ? pageSize : Integer.MAX_VALUE);
+    }
+
+    /**
+     * 执行批量脚本，并输出合并后输出的第一页内容。
+     *
+     * @param batch 批量执行的命令脚本
+     * @throws IOException 如果输出过程中发生错误，则抛出此异常
+     */
+    private void executeBatch(NaiveCommandBatch batch) throws IOException {
+        //脚本中的全部命令执行完成后再分页输出，避免未读取的输出被释放或被新命令替换时，剩余命令未被执行
+        cursor = batch.execute(executor, batchExecutorService).iterator();
+        writeNextPage(pageSize > 0 ? pageSize : Integer.MAX_VALUE);
+    }
+
+    /**
+     * 读取批量脚本内容，直至读取到 "end" 行，如果输入流已结束，则返回 {@code null}。
+     *
+     * <p>
+     * 读取过程中如果行数超过 {@link NaiveCommandBatch#MAX_LINES} 或字节数超过 {@link NaiveCommandBatch#MAX_BYTES}，
+     * 将立即输出错误信息，并丢弃直至 "end" 行的剩余内容，返回 {@code null}。
+     * </p>
+     *
+     * @return 批量脚本内容，可能为 {@code null}
+     * @throws IOException 如果读取过程中发生错误，则抛出此异常
+     * @throws InterruptedException 在读取等待过程中，线程被中断，则抛出此异常
+     */
+    private List<String> readBatchLines() throws IOException, InterruptedException {
+        List<String> lineList = new ArrayList<>();
+        long totalBytes = 0;
+        boolean rejected = false;
+        String line;
+        while ((line = textualSocket.readLine()) != null) {
+            line = line.toLowerCase();
+            if (line.trim().equals("end")) {
+                return rejected ? null : lineList;
+            }
+            if (!rejected) {
+                totalBytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                if (lineList.size() >= NaiveCommandBatch.MAX_LINES || totalBytes > NaiveCommandBatch.MAX_BYTES) {
+                    rejected = true;
+                    lineList = null;
+                    textualSocket.writeLine("Invalid batch: `Batch is too large. Max lines: " + NaiveCommandBatch.MAX_LINES
+                            + ". Max bytes: " + NaiveCommandBatch.MAX_BYTES + ".`. Remaining lines will be discarded until `end`.");
+                } else {
+                    lineList.add(line);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 添加一条历史命令，超过最大数量时，移除最早的历史命令。
+     *
+     * @param entry 历史命令
+     */
+    private void addHistory(HistoryEntry entry) {
+        entry.number = ++lastHistoryNumber;
+        historyDeque.addLast(entry);
+        if (historyDeque.size() > MAX_HISTORY_SIZE) {
+            historyDeque.removeFirst();
+        }
+    }
+
+    /**
+     * 处理历史命令相关操作："!" 输出历史命令列表，"!!" 重新执行上一条命令，"!n" 重新执行序号为 n 的命令。
+     *
+     * @param argument "!" 之后的内容
+     * @throws IOException 如果输出过程中发生错误，则抛出此异常
+     */
+    private void replay(String argument) throws IOException {
+        if (argument.isEmpty()) {
+            List<String> outputList = new ArrayList<>();
+            for (HistoryEntry entry : historyDeque) {
+                outputList.add(String.format("%5d  %s", entry.number, entry.command));
+            }
+            cursor = outputList.iterator();
+            writeNextPage(pageSize > 0 ? pageSize : Integer.MAX_VALUE);
+            return;
+        }
+        HistoryEntry target = null;
+        if (argument.equals("!")) {
+            target = historyDeque.peekLast();
+        } else {
+            try {
+                int number = Integer.parseInt(argument);
+                for (HistoryEntry entry : historyDeque) {
+                    if (entry.number == number) {
+                        target = entry;
+                        break;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                textualSocket.writeLine("Invalid history number: `" + argument + "`. Usage: `!` | `!!` | `!n`");
+                return;
+            }
+        }
+        if (target == null) {
+            textualSocket.writeLine("History not found: `" + argument + "`.");
+            return;
+        }
+        addHistory(new HistoryEntry(target.command, target.batch));
+        if (target.batch != null) {
+            executeBatch(target.batch);
+        } else {
+            executeCommand(target.command);
+        }
+    }
+
+    /**
+     * 输出上一次执行命令尚未输出的内容，最多输出指定行数，如果仍有剩余内容，将输出继续获取的提示信息。
+     *
+     * @param maxLines 最多输出的行数
+     * @throws IOException 如果输出过程中发生错误，则抛出此异常
+     */
+    private void writeNextPage(int maxLines) throws IOException {
+        Iterator<String> currentCursor = cursor;
+        if (currentCursor == null) {
+            textualSocket.writeLine("No more output.");
+            return;
+        }
+        if (currentCursor == RELEASED_CURSOR) {
+            CURSOR_UPDATER.compareAndSet(this, currentCursor, null);
+            textualSocket.writeLine("Output has been released due to idle timeout. Please execute the command again.");
+            return;
+        }
+        int lines = 0;
+        while (lines < maxLines && currentCursor.hasNext()) {
+            textualSocket.writeLine(currentCursor.next());
+            lines++;
+        }
+        if (currentCursor.hasNext()) {
+            textualSocket.writeLine("-- More -- (input `more` or `next N` to continue)");
+        } else {
+            CURSOR_UPDATER.compareAndSet(this, currentCursor, null);
+        }
+    }
+
     private class IoThread extends Thread {
 
         private volatile boolean stopSignal = false;
@@ -171,6 +461,12 @@ public class NaiveCliSession implements Closeable {
                 while (!stopSignal) {
                     String input = textualSocket.readLine();
                     if (input != null) {
+                        executing = true;
+                        if (draining) {
+                            executing = false;
+                            close();
+                            break;
+                        }
                         input = input.toLowerCase();
                         if (input.equals("quit")) {
                             textualSocket.writeLine("bye bye~");
@@ -179,13 +475,61 @@ public class NaiveCliSession implements Closeable {
                         } else if (input.equals("ping")) {
                             textualSocket.writeLine("pong");
                             lastActiveTime = System.currentTimeMillis();
-                        } else {
+                        } else if (input.equals("more")) {
+                            lastActiveTime = System.currentTimeMillis();
+                            writeNextPage(pageSize > 0 ? pageSize : Integer.MAX_VALUE);
+                            lastActiveTime = System.currentTimeMillis();
+                        } else if (input.startsWith("next ") || input.equals("next")) {
                             lastActiveTime = System.currentTimeMillis();
-                            List<String> outputList = executor.execute(input);
-                            for (String output : outputList) {
-                                textualSocket.writeLine(output);
+                            String lineCount = input.substring(4).trim();
+                            int maxLines = -1;
+                            try {
+                                maxLines = lineCount.isEmpty() ? Math.max(pageSize, 1) : Integer.parseInt(lineCount);
+                            } catch (NumberFormatException ignored) {
+                                //invalid line count, usage will be printed
                             }
+                            if (maxLines > 0) {
+                                writeNextPage(maxLines);
+                            } else {
+                                textualSocket.writeLine("Invalid line count: `" + lineCount + "`. Usage: next [N]");
+                            }
+                            lastActiveTime = System.currentTimeMillis();
+                        } else if (input.equals("batch")) {
                             lastActiveTime = System.currentTimeMillis();
+                            //等待脚本输入期间视为空闲，排空时可立即关闭
+                            executing = false;
+                            List<String> lineList = readBatchLines();
+                            executing = true;
+                            if (draining) {
+                                executing = false;
+                                close();
+                                break;
+                            }
+                            if (lineList != null) {
+                                try {
+                                    NaiveCommandBatch batch = new NaiveCommandBatch(lineList);
+                                    addHistory(new HistoryEntry("batch (" + batch.getCommandCount() + " commands)", batch));
+                                    executeBatch(batch);
+                                } catch (IllegalArgumentException e) {
+                                    textualSocket.writeLine("Invalid batch: `" + e.getMessage() + "`.");
+                                }
+                            }
+                            lastActiveTime = System.currentTimeMillis();
+                        } else if (input.startsWith("!")) {
+                            lastActiveTime = System.currentTimeMillis();
+                            replay(input.substring(1).trim());
+                            lastActiveTime = System.currentTimeMillis();
+                        } else {
+                            lastActiveTime = System.currentTimeMillis();
+                            addHistory(new HistoryEntry(input, null));
+                            executeCommand(input);
+                            lastActiveTime = System.currentTimeMillis();
+                        }
+                        executing = false;
+                        if (draining) {
+                            textualSocket.writeLine("NaiveCli is shutting down. bye bye~");
+                            close();
+                            break;
                         }
                     } else {
                         LOGGER.info("End of the input stream has been reached. Socket: `{}`", socket);
@@ -205,4 +549,30 @@ public class NaiveCliSession implements Closeable {
             }
         }
     }
+
+    /**
+     * Session 中的一条历史命令。
+     */
+    private static class HistoryEntry {
+
+        /**
+         * 历史命令序号，在 Session 内递增
+         */
+        private int number;
+
+        /**
+         * 命令内容，如果为批量脚本，则为脚本描述
+         */
+        private final String command;
+
+        /**
+         * 已解析的批量脚本，如果不是批量脚本，则为 {@code null}
+         */
+        private final NaiveCommandBatch batch;
+
+        private HistoryEntry(String command, NaiveCommandBatch batch) {
+            this.command = command;
+            this.batch = batch;
+        }
+    }
 }
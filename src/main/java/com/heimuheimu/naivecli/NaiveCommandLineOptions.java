@@ -0,0 +1,185 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heimuheimu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.heimuheimu.naivecli;
+
+import com.heimuheimu.naivecli.command.NaiveCommandAdmissionController;
+import com.heimuheimu.naivecli.snapshot.CommandSnapshotScheduler;
+
+/**
+ * {@link NaiveCommandLineUtilities} 的可选配置项，未设置的配置项将使用默认值。
+ *
+ * <p>
+ * Spring 配置示例：
+ * <pre>
+ * &lt;bean class="com.heimuheimu.naivecli.NaiveCommandLineOptions"&gt;
+ *     &lt;property name="pageSize" value="100" /&gt;
+ *     &lt;property name="cursorIdleSeconds" value="60" /&gt;
+ *     &lt;property name="drainTimeoutMillis" value="3000" /&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ * </p>
+ *
+ * <p><strong>说明：</strong>{@code NaiveCommandLineOptions} 类是非线程安全的，应在构造 {@link NaiveCommandLineUtilities} 之前完成设置。</p>
+ *
+ * @author heimuheimu
+ */
+public class NaiveCommandLineOptions {
+
+    /**
+     * 默认的关闭排空等待毫秒数
+     */
+    public static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 3000;
+
+    /**
+     * 默认的命令尚未输出内容允许保留的最大闲置秒数
+     */
+    public static final int DEFAULT_CURSOR_IDLE_SECONDS = 60;
+
+    /**
+     * 命令输出的分页行数，如果小于等于 0，则不进行分页，默认为 0
+     */
+    private int pageSize = 0;
+
+    /**
+     * 命令尚未输出的内容允许保留的最大闲置秒数，如果小于等于 0，则不进行释放，默认为 {@link #DEFAULT_CURSOR_IDLE_SECONDS}
+     */
+    private int cursorIdleSeconds = DEFAULT_CURSOR_IDLE_SECONDS;
+
+    /**
+     * 关闭时等待正在执行的命令完成输出的最大毫秒数，如果小于等于 0，则立即强制关闭，默认为 {@link #DEFAULT_DRAIN_TIMEOUT_MILLIS}
+     */
+    private long drainTimeoutMillis = DEFAULT_DRAIN_TIMEOUT_MILLIS;
+
+    /**
+     * 命令准入控制器，如果为 {@code null}，则不进行准入控制，默认为 {@code null}
+     */
+    private NaiveCommandAdmissionController admissionController = null;
+
+    /**
+     * 命令输出快照采集器，如果为 {@code null}，则不进行快照采集，默认为 {@code null}
+     */
+    private CommandSnapshotScheduler snapshotScheduler = null;
+
+    /**
+     * 获得命令输出的分页行数，如果小于等于 0，则不进行分页。
+     *
+     * @return 命令输出的分页行数
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * 设置命令输出的分页行数，命令输出超过分页行数时，仅输出第一页，剩余内容可通过 "more" 或 "next N" 命令继续获取。
+     *
+     * @param pageSize 命令输出的分页行数，如果小于等于 0，则不进行分页
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * 获得命令尚未输出的内容允许保留的最大闲置秒数，如果小于等于 0，则不进行释放。
+     *
+     * @return 命令尚未输出的内容允许保留的最大闲置秒数
+     */
+    public int getCursorIdleSeconds() {
+        return cursorIdleSeconds;
+    }
+
+    /**
+     * 设置命令尚未输出的内容允许保留的最大闲置秒数，{@link NaiveCliSession} 闲置超过该时间后，尚未输出的内容将被释放，
+     * Session 本身不会被关闭。
+     *
+     * @param cursorIdleSeconds 命令尚未输出的内容允许保留的最大闲置秒数，如果小于等于 0，则不进行释放
+     */
+    public void setCursorIdleSeconds(int cursorIdleSeconds) {
+        this.cursorIdleSeconds = cursorIdleSeconds;
+    }
+
+    /**
+     * 获得关闭时等待正在执行的命令完成输出的最大毫秒数。
+     *
+     * @return 关闭时等待正在执行的命令完成输出的最大毫秒数
+     */
+    public long getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+
+    /**
+     * 设置关闭时等待正在执行的命令完成输出的最大毫秒数，超过该时间仍未关闭的 {@link NaiveCliSession} 将会被强制关闭。
+     *
+     * @param drainTimeoutMillis 关闭时等待正在执行的命令完成输出的最大毫秒数，如果小于等于 0，则立即强制关闭
+     */
+    public void setDrainTimeoutMillis(long drainTimeoutMillis) {
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+
+    /**
+     * 获得命令准入控制器，可能为 {@code null}。
+     *
+     * @return 命令准入控制器
+     */
+    public NaiveCommandAdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    /**
+     * 设置命令准入控制器，在主机压力较大时拒绝执行重量级命令，由 {@link NaiveCommandLineUtilities} 负责初始化和关闭。
+     *
+     * @param admissionController 命令准入控制器，如果为 {@code null}，则不进行准入控制
+     */
+    public void setAdmissionController(NaiveCommandAdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    /**
+     * 获得命令输出快照采集器，可能为 {@code null}。
+     *
+     * @return 命令输出快照采集器
+     */
+    public CommandSnapshotScheduler getSnapshotScheduler() {
+        return snapshotScheduler;
+    }
+
+    /**
+     * 设置命令输出快照采集器，定时采集命令输出并注册 "history" 命令，由 {@link NaiveCommandLineUtilities} 负责初始化和关闭。
+     *
+     * @param snapshotScheduler 命令输出快照采集器，如果为 {@code null}，则不进行快照采集
+     */
+    public void setSnapshotScheduler(CommandSnapshotScheduler snapshotScheduler) {
+        this.snapshotScheduler = snapshotScheduler;
+    }
+
+    @Override
+    public String toString() {
+        return "NaiveCommandLineOptions{" +
+                "pageSize=" + pageSize +
+                ", cursorIdleSeconds=" + cursorIdleSeconds +
+                ", drainTimeoutMillis=" + drainTimeoutMillis +
+                ", admissionController=" + admissionController +
+                ", snapshotScheduler=" + snapshotScheduler +
+                '}';
+    }
+}
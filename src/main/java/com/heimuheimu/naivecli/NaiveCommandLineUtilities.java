@@ -25,8 +25,11 @@
 package com.heimuheimu.naivecli;
 
 import com.heimuheimu.naivecli.command.NaiveCommand;
+import com.heimuheimu.naivecli.command.NaiveCommandAdmissionController;
 import com.heimuheimu.naivecli.command.NaiveCommandExecutor;
 import com.heimuheimu.naivecli.constant.BeanStatusEnum;
+import com.heimuheimu.naivecli.snapshot.CommandSnapshotScheduler;
+import com.heimuheimu.naivecli.snapshot.HistoryCommand;
 import com.heimuheimu.naivecli.socket.TextualSocket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,7 +40,8 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.util.Collection;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 为 Java 项目提供命令行工具，命令的输入与输出均通过文本形式进行交互。
@@ -48,6 +52,11 @@ public class NaiveCommandLineUtilities implements Closeable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(NaiveCommandLineUtilities.class);
 
+    /**
+     * 批量执行脚本中并行组使用的最大线程数，线程池已满时，命令将在 NaiveCliSession 的 IO 线程中执行
+     */
+    private static final int MAX_BATCH_THREADS = 16;
+
     private BeanStatusEnum state = BeanStatusEnum.UNINITIALIZED;
 
     private final CopyOnWriteArrayList<NaiveCliSession> currentSessionList = new CopyOnWriteArrayList<>();
@@ -67,15 +76,50 @@ public class NaiveCommandLineUtilities implements Closeable {
      */
     private final int maxIdleSeconds;
 
+    /**
+     * 命令输出的分页行数，如果小于等于 0，则不进行分页
+     */
+    private final int pageSize;
+
+    /**
+     * 命令尚未输出的内容允许保留的最大闲置秒数，如果小于等于 0，则不进行释放
+     */
+    private final int cursorIdleSeconds;
+
+    /**
+     * 关闭时等待正在执行的命令完成输出的最大毫秒数，超过该时间仍未关闭的 NaiveCliSession 将会被强制关闭
+     */
+    private final long drainTimeoutMillis;
+
     /**
      * 命令行工具使用的命令执行器
      */
     private final NaiveCommandExecutor naiveCommandExecutor;
 
+    /**
+     * 命令准入控制器，如果为 {@code null}，则不进行准入控制
+     */
+    private final NaiveCommandAdmissionController admissionController;
+
+    /**
+     * 命令输出快照采集器，如果为 {@code null}，则不进行快照采集
+     */
+    private final CommandSnapshotScheduler snapshotScheduler;
+
     private CliServerThread cliServerThread;
 
     /**
-     * 构造一个命令行工具。
+     * 批量执行脚本中并行组使用的线程池，所有 NaiveCliSession 共享
+     */
+    private ThreadPoolExecutor batchExecutorService;
+
+    /**
+     * 定时释放闲置 NaiveCliSession 中尚未输出内容的线程池，如果不进行释放，则为 {@code null}
+     */
+    private ScheduledExecutorService cursorSweeperService;
+
+    /**
+     * 构造一个命令行工具，可选配置项均使用默认值。
      *
      * @param port 监听的端口
      * @param commandList 命令行工具支持的命令列表
@@ -83,15 +127,61 @@ public class NaiveCommandLineUtilities implements Closeable {
      * @param maxIdleSeconds  NaiveCliSession 允许的最大闲置秒数，超过该时间的 NaiveCliSession 将会被自动关闭，如果小于等于 0，则不进行自动关闭
      */
     public NaiveCommandLineUtilities(int port, Collection<NaiveCommand> commandList, int maxSessions, int maxIdleSeconds) {
+        this(port, commandList, maxSessions, maxIdleSeconds, new NaiveCommandLineOptions());
+    }
+
+    /**
+     * 构造一个命令行工具。
+     *
+     * @param port 监听的端口
+     * @param commandList 命令行工具支持的命令列表
+     * @param maxSessions 命令行工具允许同时存在的最大 {@link NaiveCliSession} 数量
+     * @param maxIdleSeconds  NaiveCliSession 允许的最大闲置秒数，超过该时间的 NaiveCliSession 将会被自动关闭，如果小于等于 0，则不进行自动关闭
+     * @param options 可选配置项，如果为 {@code null}，则均使用默认值
+     */
+    public NaiveCommandLineUtilities(int port, Collection<NaiveCommand> commandList, int maxSessions, int maxIdleSeconds,
+                                     NaiveCommandLineOptions options) {
+        if (options == null) {
+            options = new NaiveCommandLineOptions();
+        }
         this.port = port;
-        this.naiveCommandExecutor = new NaiveCommandExecutor(commandList);
         this.maxSessions = maxSessions;
         this.maxIdleSeconds = maxIdleSeconds;
+        this.pageSize = options.getPageSize();
+        this.cursorIdleSeconds = options.getCursorIdleSeconds();
+        this.drainTimeoutMillis = options.getDrainTimeoutMillis();
+        this.admissionController = options.getAdmissionController();
+        this.snapshotScheduler = options.getSnapshotScheduler();
+        this.naiveCommandExecutor = new NaiveCommandExecutor(commandList, admissionController);
     }
 
     public synchronized void init() {
         if (state == BeanStatusEnum.UNINITIALIZED) {
             try {
+                if (admissionController != null) {
+                    admissionController.init();
+                }
+                if (snapshotScheduler != null) {
+                    snapshotScheduler.init(naiveCommandExecutor);
+                    if (snapshotScheduler.isActive()) {
+                        naiveCommandExecutor.register(new HistoryCommand(snapshotScheduler.getStore()));
+                    }
+                }
+                AtomicLong batchThreadNumber = new AtomicLong();
+                batchExecutorService = new ThreadPoolExecutor(0, MAX_BATCH_THREADS,
+                        60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                            Thread thread = new Thread(runnable, "[NaiveCliBatch]:" + port + "-" + batchThreadNumber.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                if (cursorIdleSeconds > 0) {
+                    cursorSweeperService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "[NaiveCliCursorSweeper]:" + port);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    cursorSweeperService.scheduleWithFixedDelay(this::releaseIdleCursors, 1, 1, TimeUnit.SECONDS);
+                }
                 cliServerThread = new CliServerThread();
                 cliServerThread.setName("[NaiveCommandLineUtilities]:" + port);
                 cliServerThread.setDaemon(true);
@@ -105,6 +195,9 @@ public class NaiveCommandLineUtilities implements Closeable {
         }
     }
 
+    /**
+     * 关闭命令行工具：停止接受新的连接，等待正在执行的命令完成输出，超过排空等待时间后强制关闭剩余的 NaiveCliSession。
+     */
     @Override
     public synchronized void close() {
         if (state != BeanStatusEnum.CLOSED) {
@@ -114,17 +207,77 @@ public class NaiveCommandLineUtilities implements Closeable {
                 if (cliServerThread != null) {
                     cliServerThread.close();
                 }
+                int drainedSessions = 0;
+                int forceClosedSessions = 0;
+                if (drainTimeoutMillis > 0) {
+                    for (NaiveCliSession session : currentSessionList) {
+                        session.drain();
+                    }
+                    long deadline = startTime + drainTimeoutMillis;
+                    for (NaiveCliSession session : currentSessionList) {
+                        if (session.awaitClose(Math.max(deadline - System.currentTimeMillis(), 0))) {
+                            drainedSessions++;
+                        } else {
+                            session.close();
+                            forceClosedSessions++;
+                        }
+                    }
+                } else {
+                    for (NaiveCliSession session : currentSessionList) {
+                        session.close();
+                        forceClosedSessions++;
+                    }
+                }
+                currentSessionList.clear();
+                LOGGER.info("NaiveCommandLineUtilities has benn closed. Cost: `{} ms`. Drained sessions: `{}`. Force closed sessions: `{}`. Drain timeout: `{} ms`. Port: `{}`.",
+                        (System.currentTimeMillis() - startTime), drainedSessions, forceClosedSessions, drainTimeoutMillis, port);
+            } catch (InterruptedException e) {
                 for (NaiveCliSession session : currentSessionList) {
                     session.close();
                 }
-                LOGGER.info("NaiveCommandLineUtilities has benn closed. Cost: `{} ms`. Port: `{}`.",
-                        (System.currentTimeMillis() - startTime), port);
+                Thread.currentThread().interrupt();
+                LOGGER.error("Close NaiveCommandLineUtilities interrupted, all sessions have been force closed. Cost: `"
+                        + (System.currentTimeMillis() - startTime) + " ms`. Port: `" + port + "`.");
             } catch (Exception e) {
                 LOGGER.error("Close NaiveCommandLineUtilities failed: `" + e.getMessage() + "`. Port: `" + port + "`.", e);
+            } finally {
+                //无论 Session 是否正常关闭，均需释放线程池、快照存储及采样线程
+                if (cursorSweeperService != null) {
+                    cursorSweeperService.shutdownNow();
+                }
+                if (batchExecutorService != null) {
+                    batchExecutorService.shutdownNow();
+                }
+                if (snapshotScheduler != null) {
+                    snapshotScheduler.close();
+                }
+                if (admissionController != null) {
+                    admissionController.close();
+                }
             }
         }
     }
 
+    /**
+     * 在运行期间注册一个命令，已建立的 {@link NaiveCliSession} 可立即使用该命令。
+     *
+     * @param command 需要注册的命令
+     * @return 是否注册成功，如果命令名称不合法，将返回 {@code false}
+     */
+    public boolean registerCommand(NaiveCommand command) {
+        return naiveCommandExecutor.register(command);
+    }
+
+    /**
+     * 在运行期间注销指定名称的命令。
+     *
+     * @param commandName 命令名称，不区分大小写
+     * @return 被注销的命令，如果该命令不存在，则返回 {@code null}
+     */
+    public NaiveCommand unregisterCommand(String commandName) {
+        return naiveCommandExecutor.unregister(commandName);
+    }
+
     /**
      * 移除不活跃的 NaiveCliSession。
      */
@@ -138,6 +291,19 @@ public class NaiveCommandLineUtilities implements Closeable {
         }
     }
 
+    /**
+     * 释放闲置超过 {@link #cursorIdleSeconds} 秒的 NaiveCliSession 中尚未输出的内容，Session 本身不会被关闭。
+     */
+    private void releaseIdleCursors() {
+        try {
+            for (NaiveCliSession session : currentSessionList) {
+                session.releaseIdleCursor(cursorIdleSeconds);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Release idle cursors failed: `" + e.getMessage() + "`. Port: `" + port + "`.", e);
+        }
+    }
+
     private class CliServerThread extends Thread {
 
         private volatile boolean stopSignal = false;
@@ -164,7 +330,7 @@ public class NaiveCommandLineUtilities implements Closeable {
                             socket.close();
                         } catch (Exception ignored) {}
                     } else {
-                        NaiveCliSession naiveCliSession = new NaiveCliSession(socket, naiveCommandExecutor);
+                        NaiveCliSession naiveCliSession = new NaiveCliSession(socket, naiveCommandExecutor, pageSize, batchExecutorService);
                         naiveCliSession.init();
                         if (naiveCliSession.isActive()) {
                             currentSessionList.add(naiveCliSession);
@@ -24,6 +24,7 @@
 
 package com.heimuheimu.naivecli.command;
 
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -34,7 +35,7 @@ import java.util.List;
 public interface NaiveCommand {
 
     /**
-     * 获得命令名称，不区分大小写，不能含有空格，不能使用"quit"、"ping"等系统命令名称
+     * 获得命令名称，不区分大小写，不能含有空格，不能使用"quit"、"ping"、"more"、"next"、"batch"等系统命令名称
      *
      * @return 命令名称
      */
@@ -49,6 +50,15 @@ public interface NaiveCommand {
         return "";
     }
 
+    /**
+     * 判断该命令是否为重量级命令，重量级命令在主机压力较大时可能被 {@link NaiveCommandAdmissionController} 拒绝执行。
+     *
+     * @return 是否为重量级命令，默认为 {@code false}
+     */
+    default boolean isHeavy() {
+        return false;
+    }
+
     /**
      * 执行该命令，并返回执行信息。
      *
@@ -56,4 +66,19 @@ public interface NaiveCommand {
      * @return 执行返回信息
      */
     List<String> execute(String[] args);
+
+    /**
+     * 执行该命令，并以迭代器的形式返回执行信息，调用方每读取一行，才需要生成一行。
+     *
+     * <p>
+     * 输出内容较多的命令可覆盖该方法，按需生成输出内容，调用方分页读取时可避免一次性生成全部内容。
+     * 默认实现直接返回 {@link #execute(String[])} 结果的迭代器。
+     * </p>
+     *
+     * @param args 命令执行参数
+     * @return 执行返回信息的迭代器
+     */
+    default Iterator<String> executeLazily(String[] args) {
+        return execute(args).iterator();
+    }
 }
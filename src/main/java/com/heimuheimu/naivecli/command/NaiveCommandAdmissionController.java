@@ -0,0 +1,315 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heimuheimu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.heimuheimu.naivecli.command;
+
+import com.heimuheimu.naivecli.constant.BeanStatusEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.lang.management.*;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 命令准入控制器，根据当前 JVM 所在主机的压力情况，决定是否允许执行 {@link NaiveCommand#isHeavy()} 为 {@code true} 的命令。
+ *
+ * <p>
+ * 压力指标通过 {@code java.lang.management} 获取，包括：CPU 使用率、GC 耗时占比、堆内存使用率，
+ * 任意一项超过阈值即认为主机处于压力状态。
+ * </p>
+ *
+ * <p>
+ * CPU 使用率优先通过 {@code com.sun.management.OperatingSystemMXBean#getSystemCpuLoad()} 获取，为距上一次采样期间整个主机的 CPU 使用率，
+ * 能够及时反映 CPU 压力。如果当前 JVM 不支持该指标，将使用每个 CPU 的系统平均负载（{@link OperatingSystemMXBean#getSystemLoadAverage()}
+ * 除以 CPU 数量）代替，该指标为一分钟内运行队列长度的移动平均值，反应较慢，且在 Windows 等平台上不可用，此时不检查 CPU 压力。
+ * </p>
+ *
+ * <p>
+ * 执行 {@link #init()} 后，指标由后台线程每秒采样一次，GC 耗时占比始终为最近一个采样周期内的数值，判断过程仅读取采样结果。
+ * 如果未执行初始化，将在判断时按需采样，距上一次采样超过 {@link #MAX_GC_WINDOW_MILLIS} 时，GC 耗时占比的计算窗口将被重置，
+ * 避免长时间未采样导致近期的 GC 压力被平均。
+ * </p>
+ *
+ * <p><strong>说明：</strong>{@code NaiveCommandAdmissionController} 类是线程安全的，可在多个线程中使用同一个实例。</p>
+ *
+ * @author heimuheimu
+ */
+public class NaiveCommandAdmissionController implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NaiveCommandAdmissionController.class);
+
+    /**
+     * 压力指标采样间隔毫秒数
+     */
+    private static final long SAMPLE_INTERVAL_MILLIS = 1000;
+
+    /**
+     * 计算 GC 耗时占比允许的最大窗口毫秒数，按需采样时超过该窗口将重置计算基准
+     */
+    private static final long MAX_GC_WINDOW_MILLIS = 3 * SAMPLE_INTERVAL_MILLIS;
+
+    /**
+     * 当前实例所处状态
+     */
+    private volatile BeanStatusEnum state = BeanStatusEnum.UNINITIALIZED;
+
+    /**
+     * 后台采样使用的线程池
+     */
+    private ScheduledExecutorService sampleExecutorService;
+
+    /**
+     * 允许的最大 CPU 使用率，取值范围为 (0, 1]，如果小于等于 0，则不检查该指标
+     */
+    private final double maxCpuLoad;
+
+    /**
+     * 允许的最大 GC 耗时占比，取值范围为 (0, 1]，如果小于等于 0，则不检查该指标
+     */
+    private final double maxGcTimeRatio;
+
+    /**
+     * 允许的最大堆内存使用率，取值范围为 (0, 1]，如果小于等于 0，则不检查该指标
+     */
+    private final double maxHeapUsageRatio;
+
+    /**
+     * 被拒绝执行的命令数量
+     */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final OperatingSystemMXBean operatingSystemMXBean = ManagementFactory.getOperatingSystemMXBean();
+
+    /**
+     * 可获取 CPU 使用率的 OperatingSystemMXBean，如果当前 JVM 不支持，则为 {@code null}
+     */
+    private final com.sun.management.OperatingSystemMXBean cpuLoadMXBean = getCpuLoadMXBean(operatingSystemMXBean);
+
+    private final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+
+    private final List<GarbageCollectorMXBean> garbageCollectorMXBeanList = ManagementFactory.getGarbageCollectorMXBeans();
+
+    /**
+     * 上一次采样时间
+     */
+    private long lastSampleTime;
+
+    /**
+     * 上一次采样时的 GC 累计耗时毫秒数
+     */
+    private long lastGcTimeMillis;
+
+    /**
+     * 上一次采样得到的主机压力原因，如果主机不存在压力，则为 {@code null}
+     */
+    private volatile String pressureReason = null;
+
+    /**
+     * 上一次采样的过期时间
+     */
+    private volatile long sampleExpireTime = 0;
+
+    /**
+     * 构造一个命令准入控制器。
+     *
+     * @param maxCpuLoad 允许的最大 CPU 使用率，取值范围为 (0, 1]，使用系统平均负载代替时与每个 CPU 的平均负载进行比较，如果小于等于 0，则不检查该指标
+     * @param maxGcTimeRatio 允许的最大 GC 耗时占比，取值范围为 (0, 1]，如果小于等于 0，则不检查该指标
+     * @param maxHeapUsageRatio 允许的最大堆内存使用率，取值范围为 (0, 1]，如果小于等于 0，则不检查该指标
+     */
+    public NaiveCommandAdmissionController(double maxCpuLoad, double maxGcTimeRatio, double maxHeapUsageRatio) {
+        this.maxCpuLoad = maxCpuLoad;
+        this.maxGcTimeRatio = maxGcTimeRatio;
+        this.maxHeapUsageRatio = maxHeapUsageRatio;
+        this.lastSampleTime = System.currentTimeMillis();
+        this.lastGcTimeMillis = getTotalGcTimeMillis();
+    }
+
+    /**
+     * 执行 {@code NaiveCommandAdmissionController} 初始化操作，启动后台采样线程。
+     */
+    public synchronized void init() {
+        if (state == BeanStatusEnum.UNINITIALIZED) {
+            sampleExecutorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "[NaiveCommandAdmissionController]");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sampleExecutorService.scheduleAtFixedRate(() -> {
+                try {
+                    sample(true);
+                } catch (Exception e) {
+                    LOGGER.error("Sample host pressure failed: `" + e.getMessage() + "`.", e);
+                }
+            }, 0, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            state = BeanStatusEnum.NORMAL;
+            LOGGER.info("NaiveCommandAdmissionController has been initialized. `{}`.", this);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (state != BeanStatusEnum.CLOSED) {
+            state = BeanStatusEnum.CLOSED;
+            if (sampleExecutorService != null) {
+                sampleExecutorService.shutdownNow();
+            }
+            LOGGER.info("NaiveCommandAdmissionController has been closed. `{}`.", this);
+        }
+    }
+
+    /**
+     * 判断是否允许执行该命令，非重量级命令始终允许执行。
+     *
+     * @param command 需要执行的命令
+     * @return 如果允许执行，返回 {@code null}，否则返回拒绝原因
+     */
+    public String admit(NaiveCommand command) {
+        if (!command.isHeavy()) {
+            return null;
+        }
+        String reason = getPressureReason();
+        if (reason != null) {
+            rejectedCount.incrementAndGet();
+        }
+        return reason;
+    }
+
+    /**
+     * 获得当前主机的压力原因，如果主机不存在压力，则返回 {@code null}。
+     *
+     * @return 当前主机的压力原因，可能为 {@code null}
+     */
+    public String getPressureReason() {
+        if (state != BeanStatusEnum.NORMAL && System.currentTimeMillis() >= sampleExpireTime) {
+            sample(false);
+        }
+        return pressureReason;
+    }
+
+    /**
+     * 获得被拒绝执行的命令数量。
+     *
+     * @return 被拒绝执行的命令数量
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 采样压力指标，并更新主机压力原因。
+     *
+     * @param scheduled 是否为后台定时采样，定时采样的间隔固定，无需重置 GC 耗时占比的计算基准
+     */
+    private synchronized void sample(boolean scheduled) {
+        long now = System.currentTimeMillis();
+        if (!scheduled && now < sampleExpireTime) {
+            return;
+        }
+        String reason = null;
+        if (maxCpuLoad > 0) {
+            double cpuLoad = cpuLoadMXBean != null ? cpuLoadMXBean.getSystemCpuLoad() : -1;
+            if (cpuLoad >= 0) {
+                if (cpuLoad > maxCpuLoad) {
+                    reason = String.format("cpu load %.2f > %.2f", cpuLoad, maxCpuLoad);
+                }
+            } else {
+                //CPU 使用率不可用，使用每个 CPU 的系统平均负载代替
+                double systemLoadAverage = operatingSystemMXBean.getSystemLoadAverage();
+                if (systemLoadAverage >= 0) {
+                    double loadPerProcessor = systemLoadAverage / operatingSystemMXBean.getAvailableProcessors();
+                    if (loadPerProcessor > maxCpuLoad) {
+                        reason = String.format("load per processor %.2f > %.2f", loadPerProcessor, maxCpuLoad);
+                    }
+                }
+            }
+        }
+        long gcTimeMillis = getTotalGcTimeMillis();
+        boolean gcWindowExpired = !scheduled && now - lastSampleTime > MAX_GC_WINDOW_MILLIS;
+        if (reason == null && maxGcTimeRatio > 0 && now > lastSampleTime && !gcWindowExpired) {
+            double gcTimeRatio = (double) (gcTimeMillis - lastGcTimeMillis) / (now - lastSampleTime);
+            if (gcTimeRatio > maxGcTimeRatio) {
+                reason = String.format("gc time ratio %.2f > %.2f", gcTimeRatio, maxGcTimeRatio);
+            }
+        }
+        lastSampleTime = now;
+        lastGcTimeMillis = gcTimeMillis;
+        if (reason == null && maxHeapUsageRatio > 0) {
+            MemoryUsage heapMemoryUsage = memoryMXBean.getHeapMemoryUsage();
+            long max = heapMemoryUsage.getMax() > 0 ? heapMemoryUsage.getMax() : heapMemoryUsage.getCommitted();
+            if (max > 0) {
+                double heapUsageRatio = (double) heapMemoryUsage.getUsed() / max;
+                if (heapUsageRatio > maxHeapUsageRatio) {
+                    reason = String.format("heap usage ratio %.2f > %.2f", heapUsageRatio, maxHeapUsageRatio);
+                }
+            }
+        }
+        if (gcWindowExpired && reason == null) {
+            //计算窗口已过期，需在下一个采样周期内重新计算 GC 耗时占比
+            sampleExpireTime = now + SAMPLE_INTERVAL_MILLIS / 10;
+        } else {
+            sampleExpireTime = now + SAMPLE_INTERVAL_MILLIS;
+        }
+        pressureReason = reason;
+    }
+
+    private static com.sun.management.OperatingSystemMXBean getCpuLoadMXBean(OperatingSystemMXBean operatingSystemMXBean) {
+        try {
+            if (operatingSystemMXBean instanceof com.sun.management.OperatingSystemMXBean) {
+                return (com.sun.management.OperatingSystemMXBean) operatingSystemMXBean;
+            }
+        } catch (Throwable e) {
+            //com.sun.management 不可用，使用系统平均负载代替
+            LOGGER.warn("System cpu load is not supported, use system load average instead: `{}`.", e.getMessage());
+        }
+        return null;
+    }
+
+    private long getTotalGcTimeMillis() {
+        long totalGcTimeMillis = 0;
+        for (GarbageCollectorMXBean garbageCollectorMXBean : garbageCollectorMXBeanList) {
+            long collectionTime = garbageCollectorMXBean.getCollectionTime();
+            if (collectionTime > 0) {
+                totalGcTimeMillis += collectionTime;
+            }
+        }
+        return totalGcTimeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "NaiveCommandAdmissionController{" +
+                "state=" + state +
+                ", maxCpuLoad=" + maxCpuLoad +
+                ", cpuLoadSupported=" + (cpuLoadMXBean != null) +
+                ", maxGcTimeRatio=" + maxGcTimeRatio +
+                ", maxHeapUsageRatio=" + maxHeapUsageRatio +
+                ", rejectedCount=" + rejectedCount +
+                ", pressureReason='" + pressureReason + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heimuheimu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.heimuheimu.naivecli.command;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 批量执行的命令脚本，脚本在创建时解析一次，作为一个整体执行，全部命令执行完成后返回合并的输出。
+ *
+ * <p>
+ * 脚本中每行为一条命令，空行及以 "#" 开头的行将被忽略。以 "&amp;" 开头的命令可以并行执行，
+ * 连续的多条 "&amp;" 命令组成一个并行组，组内命令并行执行，组与组之间、组与普通命令之间按顺序执行。
+ * </p>
+ *
+ * <p>
+ * 合并后的输出中，每条命令的输出前会增加一行 "[序号] 命令内容"，输出顺序与脚本中的命令顺序一致。
+ * </p>
+ *
+ * @author heimuheimu
+ */
+public class NaiveCommandBatch {
+
+    /**
+     * 单个脚本允许的最大命令数量
+     */
+    public static final int MAX_COMMANDS = 1000;
+
+    /**
+     * 单个脚本允许的最大行数，包括空行及注释行
+     */
+    public static final int MAX_LINES = 2000;
+
+    /**
+     * 单个脚本允许的最大字节数（UTF-8 编码）
+     */
+    public static final int MAX_BYTES = 256 * 1024;
+
+    /**
+     * 单条命令在合并输出中保留的最大行数
+     */
+    public static final int MAX_OUTPUT_LINES_PER_COMMAND = 10000;
+
+    /**
+     * 合并输出保留的最大行数
+     */
+    public static final int MAX_OUTPUT_LINES = 100000;
+
+    /**
+     * 并行执行标记
+     */
+    private static final String PARALLEL_MARK = "&";
+
+    /**
+     * 按执行顺序排列的命令组，每个命令组内的命令可并行执行
+     */
+    private final List<List<String>> commandGroupList;
+
+    /**
+     * 命令总数
+     */
+    private final int commandCount;
+
+    /**
+     * 解析命令脚本，构造一个批量执行的命令脚本。
+     *
+     * @param lineList 脚本内容，每个元素为一行
+     * @throws IllegalArgumentException 如果脚本中不包含任何命令或命令数量超过 {@link #MAX_COMMANDS}，将抛出此异常
+     */
+    public NaiveCommandBatch(List<String> lineList) throws IllegalArgumentException {
+        List<List<String>> parsedCommandGroupList = new ArrayList<>();
+        List<String> parallelGroup = null;
+        int count = 0;
+        for (String line : lineList) {
+            String command = line.trim();
+            if (command.isEmpty() || command.startsWith("#")) {
+                continue;
+            }
+            if (command.startsWith(PARALLEL_MARK)) {
+                command = command.substring(PARALLEL_MARK.length()).trim();
+                if (command.isEmpty()) {
+                    continue;
+                }
+                if (parallelGroup == null) {
+                    parallelGroup = new ArrayList<>();
+                    parsedCommandGroupList.add(parallelGroup);
+                }
+                parallelGroup.add(command);
+            } else {
+                parallelGroup = null;
+                parsedCommandGroupList.add(Collections.singletonList(command));
+            }
+            if (++count > MAX_COMMANDS) {
+                throw new IllegalArgumentException("Too many commands in batch. Max commands: " + MAX_COMMANDS + ".");
+            }
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("Batch is empty.");
+        }
+        this.commandGroupList = parsedCommandGroupList;
+        this.commandCount = count;
+    }
+
+    /**
+     * 获得脚本中的命令总数。
+     *
+     * @return 命令总数
+     */
+    public int getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * 执行脚本中的全部命令，所有命令执行完成后返回合并后的输出，输出的分页不会影响命令的执行。
+     *
+     * <p>
+     * 每条命令最多保留 {@link #MAX_OUTPUT_LINES_PER_COMMAND} 行输出，整个脚本最多保留 {@link #MAX_OUTPUT_LINES} 行输出，
+     * 超出部分仍会被读取以保证命令执行完成，但不会被保留，并在该命令输出之后增加一行省略提示。
+     * 并行组提交至线程池执行，如果线程池为 {@code null} 或拒绝执行，则在当前线程中依次执行。
+     * </p>
+     *
+     * @param executor 命令执行器
+     * @param parallelExecutorService 并行组使用的线程池，如果为 {@code null} 或线程池拒绝执行，则在当前线程中依次执行
+     * @return 合并后的输出
+     */
+    public List<String> execute(NaiveCommandExecutor executor, ExecutorService parallelExecutorService) {
+        List<String> outputList = new ArrayList<>();
+        int commandNumber = 1;
+        for (List<String> commandGroup : commandGroupList) {
+            List<Future<CommandOutput>> futureList = Collections.emptyList();
+            if (commandGroup.size() > 1 && parallelExecutorService != null) {
+                futureList = new ArrayList<>(commandGroup.size());
+                for (String command : commandGroup) {
+                    try {
+                        futureList.add(parallelExecutorService.submit(() -> CommandOutput.collect(executor, command)));
+                    } catch (RejectedExecutionException e) {
+                        futureList.add(null);
+                    }
+                }
+            }
+            for (int i = 0; i < commandGroup.size(); i++) {
+                String command = commandGroup.get(i);
+                Future<CommandOutput> future = futureList.isEmpty() ? null : futureList.get(i);
+                CommandOutput commandOutput;
+                if (future == null) {
+                    commandOutput = CommandOutput.collect(executor, command);
+                } else {
+                    try {
+                        commandOutput = future.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        outputList.add("[" + commandNumber + "] " + command);
+                        outputList.add("Execute command interrupted.");
+                        return outputList;
+                    } catch (Exception e) {
+                        commandOutput = new CommandOutput(Collections.singletonList("Execute command failed: `" + e.getMessage() + "`."), 0);
+                    }
+                }
+                outputList.add("[" + (commandNumber++) + "] " + command);
+                int retainedLines = Math.max(Math.min(commandOutput.lineList.size(), MAX_OUTPUT_LINES - outputList.size()), 0);
+                outputList.addAll(commandOutput.lineList.subList(0, retainedLines));
+                long omittedLines = commandOutput.omittedLines + commandOutput.lineList.size() - retainedLines;
+                if (omittedLines > 0) {
+                    outputList.add("... " + omittedLines + " lines omitted.");
+                }
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+        return outputList;
+    }
+
+    /**
+     * 单条命令的输出，最多保留 {@link #MAX_OUTPUT_LINES_PER_COMMAND} 行。
+     */
+    private static class CommandOutput {
+
+        private final List<String> lineList;
+
+        private final long omittedLines;
+
+        private CommandOutput(List<String> lineList, long omittedLines) {
+            this.lineList = lineList;
+            this.omittedLines = omittedLines;
+        }
+
+        /**
+         * 执行命令并读取全部输出，超出保留行数的输出仅进行计数。
+         */
+        private static CommandOutput collect(NaiveCommandExecutor executor, String command) {
+            List<String> lineList = new ArrayList<>();
+            long omittedLines = 0;
+            Iterator<String> outputIterator = executor.executeLazily(command);
+            while (outputIterator.hasNext()) {
+                String line = outputIterator.next();
+                if (lineList.size() < MAX_OUTPUT_LINES_PER_COMMAND) {
+                    lineList.add(line);
+                } else {
+                    omittedLines++;
+                }
+            }
+            return new CommandOutput(lineList, omittedLines);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NaiveCommandBatch{" +
+                "commandGroupList=" + commandGroupList +
+                '}';
+    }
+}
@@ -30,7 +30,22 @@ import org.slf4j.LoggerFactory;
 import java.util.*;
 
 /**
- * 命令执行器。
+ * 命令执行器，支持在运行期间注册或注销命令。
+ *
+ * <p>
+ * 命令表采用写时复制的方式进行更新：每次注册或注销都会生成一个新的只读命令表，并通过 volatile 变量发布，
+ * 执行命令时仅读取当前命令表快照，无需加锁。
+ * </p>
+ *
+ * <p>
+ * 如果命令名称未能精确匹配，将使用前缀进行匹配，当且仅当前缀只匹配一个命令时，执行该命令。
+ * </p>
+ *
+ * <p>
+ * 命令内容支持使用管道对输出进行过滤和聚合，例如：{@code list | grep key | head 20}，
+ * 支持的操作符请参考 {@link NaiveOutputPipeline}。命令内容中的 {@code |} 均被视为管道分隔符，
+ * 如果命令参数需要包含 {@code |}，应使用 {@code \|} 进行转义。
+ * </p>
  *
  * @author heimuheimu
  */
@@ -39,26 +54,97 @@ public class NaiveCommandExecutor {
     private static final Logger LOGGER = LoggerFactory.getLogger(NaiveCommandExecutor.class);
 
     /**
-     * 命令执行器支持的命令 Map
+     * 系统保留的命令名称，由 {@code NaiveCliSession} 直接处理，不允许注册
      */
-    private final Map<String, NaiveCommand> commandMap;
+    public static final Set<String> RESERVED_COMMAND_NAMES = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("quit", "ping", "more", "next", "batch")));
 
     /**
-     * 构造一个命令执行器。
+     * 命令执行器支持的命令表，Key 为小写的命令名称，按名称排序，每次更新时整体替换
+     */
+    private volatile NavigableMap<String, NaiveCommand> commandMap;
+
+    /**
+     * 命令准入控制器，如果为 {@code null}，则不进行准入控制
+     */
+    private final NaiveCommandAdmissionController admissionController;
+
+    /**
+     * 构造一个命令执行器，不进行准入控制。
      *
      * @param commandList 支持的命令列表
      */
     public NaiveCommandExecutor(Collection<NaiveCommand> commandList) {
-        commandMap = new HashMap<>();
+        this(commandList, null);
+    }
+
+    /**
+     * 构造一个命令执行器，在主机压力较大时拒绝执行重量级命令。
+     *
+     * @param commandList 支持的命令列表
+     * @param admissionController 命令准入控制器，如果为 {@code null}，则不进行准入控制
+     */
+    public NaiveCommandExecutor(Collection<NaiveCommand> commandList, NaiveCommandAdmissionController admissionController) {
+        this.admissionController = admissionController;
+        TreeMap<String, NaiveCommand> initialCommandMap = new TreeMap<>();
         for (NaiveCommand command : commandList) {
-            String commandName = command.getName().toLowerCase();
-            NaiveCommand existedCommand = commandMap.get(commandName);
-            if (existedCommand != null && existedCommand != command) {
-                LOGGER.error("Duplicate command: `" + commandName + "`. Existed command: `" + existedCommand
-                        + "`. Replace command: `" + command + "`.");
-            }
-            commandMap.put(commandName, command);
+            putCommand(initialCommandMap, command);
+        }
+        commandMap = Collections.unmodifiableNavigableMap(initialCommandMap);
+    }
+
+    /**
+     * 注册一个命令，如果已存在同名命令，将会被替换。
+     *
+     * @param command 需要注册的命令
+     * @return 是否注册成功，如果命令名称不合法，将返回 {@code false}
+     */
+    public synchronized boolean register(NaiveCommand command) {
+        TreeMap<String, NaiveCommand> updatedCommandMap = new TreeMap<>(commandMap);
+        if (putCommand(updatedCommandMap, command)) {
+            commandMap = Collections.unmodifiableNavigableMap(updatedCommandMap);
+            LOGGER.info("Register command success: `{}`. Command: `{}`.", command.getName(), command);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * 注销指定名称的命令。
+     *
+     * @param commandName 命令名称，不区分大小写
+     * @return 被注销的命令，如果该命令不存在，则返回 {@code null}
+     */
+    public synchronized NaiveCommand unregister(String commandName) {
+        String lowerCaseCommandName = commandName.toLowerCase();
+        if (commandMap.containsKey(lowerCaseCommandName)) {
+            TreeMap<String, NaiveCommand> updatedCommandMap = new TreeMap<>(commandMap);
+            NaiveCommand removedCommand = updatedCommandMap.remove(lowerCaseCommandName);
+            commandMap = Collections.unmodifiableNavigableMap(updatedCommandMap);
+            LOGGER.info("Unregister command success: `{}`. Command: `{}`.", lowerCaseCommandName, removedCommand);
+            return removedCommand;
+        } else {
+            return null;
+        }
+    }
+
+    private static List<String> collect(Iterator<String> outputIterator) {
+        List<String> output = new ArrayList<>();
+        while (outputIterator.hasNext()) {
+            output.add(outputIterator.next());
         }
+        return output;
+    }
+
+    /**
+     * 获得以指定前缀开始的命令名称列表，可用于命令补全，返回的列表按名称排序。
+     *
+     * @param prefix 命令名称前缀，不区分大小写
+     * @return 以指定前缀开始的命令名称列表，不会为 {@code null}
+     */
+    public List<String> getCommandNames(String prefix) {
+        return new ArrayList<>(getPrefixMap(commandMap, prefix.toLowerCase()).keySet());
     }
 
     /**
@@ -68,27 +154,93 @@ public class NaiveCommandExecutor {
      * @return 命令执行后的输出
      */
     public List<String> execute(String command) {
+        return collect(executeLazily(command, false));
+    }
+
+    /**
+     * 执行指定命令，如果命令被准入控制器拒绝执行，则返回 {@code null}，适用于定时采集等不应将拒绝信息当作命令输出的场景。
+     *
+     * @param command 命令内容
+     * @return 命令执行后的输出，如果命令被拒绝执行，则返回 {@code null}
+     */
+    public List<String> executeIfAdmitted(String command) {
+        Iterator<String> outputIterator = executeLazily(command, true);
+        return outputIterator != null ? collect(outputIterator) : null;
+    }
+
+    /**
+     * 执行指定命令，并以迭代器的形式返回命令输出，输出内容在迭代时按需生成。
+     *
+     * <p>
+     * 迭代过程中如果发生异常，将输出一行错误信息后结束迭代，不会向调用方抛出异常。
+     * </p>
+     *
+     * @param command 命令内容
+     * @return 命令执行后的输出迭代器
+     */
+    public Iterator<String> executeLazily(String command) {
+        return executeLazily(command, false);
+    }
+
+    private Iterator<String> executeLazily(String command, boolean nullIfRejected) {
         List<String> output = new ArrayList<>();
         try {
+            NaiveOutputPipeline pipeline = null;
+            List<String> partList = NaiveOutputPipeline.split(command);
+            if (partList.size() > 1) {
+                try {
+                    pipeline = new NaiveOutputPipeline(partList.subList(1, partList.size()));
+                } catch (IllegalArgumentException e) {
+                    output.add("Invalid pipe: `" + e.getMessage() + "`.");
+                    return output.iterator();
+                }
+                command = partList.get(0).trim();
+            } else {
+                command = partList.get(0);
+            }
             String[] commandParts = command.split(" ");
             String commandName = commandParts[0].toLowerCase();
             String[] args = new String[commandParts.length - 1];
             if (args.length > 0) {
                 System.arraycopy(commandParts, 1, args, 0, args.length);
             }
-            NaiveCommand naiveCommand = commandMap.get(commandName);
+            NavigableMap<String, NaiveCommand> currentCommandMap = commandMap;
+            NaiveCommand naiveCommand = currentCommandMap.get(commandName);
+            if (naiveCommand == null && !commandName.isEmpty()) {
+                SortedMap<String, NaiveCommand> prefixMap = getPrefixMap(currentCommandMap, commandName);
+                if (prefixMap.size() == 1) {
+                    naiveCommand = prefixMap.get(prefixMap.firstKey());
+                } else if (prefixMap.size() > 1) {
+                    output.add("`" + commandName + "` is ambiguous. Matched command: " + String.join(", ", prefixMap.keySet()) + ".");
+                    return output.iterator();
+                }
+            }
+            if (naiveCommand != null && admissionController != null) {
+                String rejectedReason = admissionController.admit(naiveCommand);
+                if (rejectedReason != null) {
+                    LOGGER.warn("Command is rejected: `{}`. Reason: `{}`.", command, rejectedReason);
+                    if (nullIfRejected) {
+                        return null;
+                    }
+                    output.add("`" + commandName + "` is rejected: host is under pressure (" + rejectedReason + "). Please try again later.");
+                    return output.iterator();
+                }
+            }
             if (naiveCommand != null) {
-                return naiveCommand.execute(args);
+                Iterator<String> outputIterator = naiveCommand.executeLazily(args);
+                if (pipeline != null) {
+                    //命令执行异常需传递至管道外层，避免错误信息被操作符当作普通输出进行过滤或计数
+                    outputIterator = pipeline.apply(outputIterator != null ? outputIterator : Collections.emptyIterator());
+                }
+                return new SafeOutputIterator(command, outputIterator);
             } else {
                 output.add("`" + commandName + "` is not supported.");
                 output.add("Supported command:");
-                List<String> commandNameList = new ArrayList<>(commandMap.keySet());
-                Collections.sort(commandNameList);
                 int index = 1;
                 String indent = getWhiteSpaceString(4);
-                for (String supportedCommandName : commandNameList) {
-                    NaiveCommand supportedCommand = commandMap.get(supportedCommandName);
-                    String argumentDescription = supportedCommand.getArgumentDescription();
+                for (Map.Entry<String, NaiveCommand> entry : currentCommandMap.entrySet()) {
+                    String supportedCommandName = entry.getKey();
+                    String argumentDescription = entry.getValue().getArgumentDescription();
                     if (argumentDescription != null && !argumentDescription.isEmpty()) {
                         output.add(indent + (index++) + ". " + supportedCommandName + " " + argumentDescription);
                     } else {
@@ -100,7 +252,40 @@ public class NaiveCommandExecutor {
             LOGGER.error("Execute command failed. command: `" + command + "`.", e);
             output.add("Execute command failed: `" + e.getMessage() + "`.");
         }
-        return output;
+        return output.iterator();
+    }
+
+    /**
+     * 将命令放入指定的命令表中，如果命令名称不合法，将不会放入。
+     *
+     * @param targetCommandMap 命令表
+     * @param command 需要放入的命令
+     * @return 是否放入成功
+     */
+    private boolean putCommand(Map<String, NaiveCommand> targetCommandMap, NaiveCommand command) {
+        String commandName = command.getName() != null ? command.getName().toLowerCase() : "";
+        if (commandName.isEmpty() || commandName.contains(" ") || RESERVED_COMMAND_NAMES.contains(commandName)) {
+            LOGGER.error("Invalid command name: `" + commandName + "`. Command: `" + command + "`.");
+            return false;
+        }
+        NaiveCommand existedCommand = targetCommandMap.get(commandName);
+        if (existedCommand != null && existedCommand != command) {
+            LOGGER.error("Duplicate command: `" + commandName + "`. Existed command: `" + existedCommand
+                    + "`. Replace command: `" + command + "`.");
+        }
+        targetCommandMap.put(commandName, command);
+        return true;
+    }
+
+    /**
+     * 在命令表中获得以指定前缀开始的子命令表。
+     *
+     * @param targetCommandMap 命令表
+     * @param prefix 小写的命令名称前缀
+     * @return 以指定前缀开始的子命令表
+     */
+    private SortedMap<String, NaiveCommand> getPrefixMap(NavigableMap<String, NaiveCommand> targetCommandMap, String prefix) {
+        return targetCommandMap.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
     }
 
     /**
@@ -116,4 +301,76 @@ public class NaiveCommandExecutor {
         }
         return result;
     }
+
+    /**
+     * 对命令输出迭代器进行封装，迭代过程中如果发生异常，将输出一行错误信息后结束迭代。
+     */
+    private static class SafeOutputIterator implements Iterator<String> {
+
+        /**
+         * 命令内容
+         */
+        private final String command;
+
+        /**
+         * 被封装的命令输出迭代器
+         */
+        private final Iterator<String> delegate;
+
+        /**
+         * 迭代过程中发生异常时输出的错误信息
+         */
+        private String errorOutput = null;
+
+        /**
+         * 迭代是否已结束
+         */
+        private boolean finished = false;
+
+        private SafeOutputIterator(String command, Iterator<String> delegate) {
+            this.command = command;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (finished) {
+                return false;
+            }
+            if (errorOutput != null) {
+                return true;
+            }
+            try {
+                if (delegate != null && delegate.hasNext()) {
+                    return true;
+                }
+                finished = true;
+                return false;
+            } catch (Exception e) {
+                onError(e);
+                return true;
+            }
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (errorOutput == null) {
+                try {
+                    return delegate.next();
+                } catch (Exception e) {
+                    onError(e);
+                }
+            }
+            finished = true;
+            return errorOutput;
+        }
+
+        private void onError(Exception e) {
+            LOGGER.error("Execute command failed. command: `" + command + "`.", e);
+            errorOutput = "Execute command failed: `" + e.getMessage() + "`.";
+        }
+    }
 }
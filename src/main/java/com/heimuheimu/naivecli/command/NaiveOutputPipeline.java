@@ -0,0 +1,278 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heimuheimu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.heimuheimu.naivecli.command;
+
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * 命令输出管道，支持在服务端对命令输出进行过滤和聚合，例如：{@code list | grep key | head 20 | count}。
+ *
+ * <p>
+ * 支持的操作符：
+ * <ul>
+ *     <li>{@code grep [-v] <text>}：保留（使用 -v 时排除）包含指定文本的行，不区分大小写</li>
+ *     <li>{@code head <n>}：仅保留前 n 行，读取足够行数后不再从上游获取输出</li>
+ *     <li>{@code count}：输出行数</li>
+ *     <li>{@code sort [-r]}：按字典顺序排序（使用 -r 时倒序），需要读取全部上游输出</li>
+ * </ul>
+ * 除 {@code sort} 和 {@code count} 外，操作符均按需从上游读取输出，不会缓存全部内容。
+ * </p>
+ *
+ * <p>
+ * 命令内容中首个未转义的 {@code |} 之后的部分均视为管道操作符，如果命令参数或操作符参数本身需要包含 {@code |}，
+ * 应使用 {@code \|} 进行转义，例如：{@code search a\|b | grep x\|y}。
+ * </p>
+ *
+ * <p>
+ * 上游在迭代过程中抛出的异常不会被操作符处理，将直接传递至管道外层，由 {@link NaiveCommandExecutor} 输出错误信息。
+ * </p>
+ *
+ * @author heimuheimu
+ */
+public class NaiveOutputPipeline {
+
+    /**
+     * 管道分隔符
+     */
+    public static final char PIPE_SEPARATOR = '|';
+
+    /**
+     * 管道分隔符转义字符
+     */
+    public static final char ESCAPE_CHAR = '\\';
+
+    /**
+     * 按顺序作用于命令输出的操作符列表
+     */
+    private final List<UnaryOperator<Iterator<String>>> operatorList;
+
+    /**
+     * 根据操作符表达式列表构造一个命令输出管道。
+     *
+     * @param expressionList 操作符表达式列表，例如 "grep key"、"head 20"
+     * @throws IllegalArgumentException 如果操作符表达式不合法，将抛出此异常
+     */
+    public NaiveOutputPipeline(List<String> expressionList) throws IllegalArgumentException {
+        List<UnaryOperator<Iterator<String>>> parsedOperatorList = new ArrayList<>();
+        for (String expression : expressionList) {
+            parsedOperatorList.add(parse(expression.trim()));
+        }
+        this.operatorList = parsedOperatorList;
+    }
+
+    /**
+     * 将管道作用于命令输出，返回处理后的输出迭代器。
+     *
+     * @param source 命令输出迭代器
+     * @return 处理后的输出迭代器
+     */
+    public Iterator<String> apply(Iterator<String> source) {
+        Iterator<String> result = source;
+        for (UnaryOperator<Iterator<String>> operator : operatorList) {
+            result = operator.apply(result);
+        }
+        return result;
+    }
+
+    /**
+     * 按未转义的管道分隔符拆分命令内容，拆分后的每一部分中 {@code \|} 将被还原为 {@code |}，其余字符保持不变。
+     *
+     * @param command 命令内容
+     * @return 拆分后的列表，第一个元素为命令本身，其余元素为操作符表达式，不会为 {@code null} 或空列表
+     */
+    public static List<String> split(String command) {
+        List<String> partList = new ArrayList<>();
+        StringBuilder part = new StringBuilder(command.length());
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (c == ESCAPE_CHAR && i + 1 < command.length() && command.charAt(i + 1) == PIPE_SEPARATOR) {
+                part.append(PIPE_SEPARATOR);
+                i++;
+            } else if (c == PIPE_SEPARATOR) {
+                partList.add(part.toString());
+                part.setLength(0);
+            } else {
+                part.append(c);
+            }
+        }
+        partList.add(part.toString());
+        return partList;
+    }
+
+    private static UnaryOperator<Iterator<String>> parse(String expression) throws IllegalArgumentException {
+        String[] parts = expression.split(" +", 2);
+        String operatorName = parts[0].toLowerCase();
+        String argument = parts.length > 1 ? parts[1].trim() : "";
+        switch (operatorName) {
+            case "grep":
+                boolean invert = false;
+                if (argument.equals("-v") || argument.startsWith("-v ")) {
+                    invert = true;
+                    argument = argument.substring(2).trim();
+                }
+                if (argument.isEmpty()) {
+                    throw new IllegalArgumentException("Usage: grep [-v] <text>");
+                }
+                String text = argument.toLowerCase();
+                boolean invertMatch = invert;
+                return source -> new GrepIterator(source, text, invertMatch);
+            case "head":
+                int limit;
+                try {
+                    limit = Integer.parseInt(argument);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Usage: head <n>");
+                }
+                if (limit < 0) {
+                    throw new IllegalArgumentException("Usage: head <n>");
+                }
+                return source -> new HeadIterator(source, limit);
+            case "count":
+                return source -> new DeferredIterator(() -> {
+                    long count = 0;
+                    while (source.hasNext()) {
+                        source.next();
+                        count++;
+                    }
+                    return Collections.singletonList(String.valueOf(count)).iterator();
+                });
+            case "sort":
+                boolean reverse = argument.equals("-r");
+                if (!argument.isEmpty() && !reverse) {
+                    throw new IllegalArgumentException("Usage: sort [-r]");
+                }
+                return source -> new DeferredIterator(() -> {
+                    List<String> lineList = new ArrayList<>();
+                    source.forEachRemaining(lineList::add);
+                    lineList.sort(Comparator.nullsFirst(reverse ? Comparator.<String>reverseOrder() : Comparator.<String>naturalOrder()));
+                    return lineList.iterator();
+                });
+            default:
+                throw new IllegalArgumentException("Unsupported pipe operator: " + operatorName
+                        + ". Supported operator: grep, head, count, sort.");
+        }
+    }
+
+    /**
+     * 保留包含指定文本的行，或排除包含指定文本的行。
+     */
+    private static class GrepIterator implements Iterator<String> {
+
+        private final Iterator<String> source;
+
+        private final String text;
+
+        private final boolean invert;
+
+        private String nextLine = null;
+
+        private GrepIterator(Iterator<String> source, String text, boolean invert) {
+            this.source = source;
+            this.text = text;
+            this.invert = invert;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (nextLine == null && source.hasNext()) {
+                String line = source.next();
+                if (line != null && line.toLowerCase().contains(text) != invert) {
+                    nextLine = line;
+                }
+            }
+            return nextLine != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String line = nextLine;
+            nextLine = null;
+            return line;
+        }
+    }
+
+    /**
+     * 仅保留前 n 行，达到行数后不再读取上游输出。
+     */
+    private static class HeadIterator implements Iterator<String> {
+
+        private final Iterator<String> source;
+
+        private int remaining;
+
+        private HeadIterator(Iterator<String> source, int limit) {
+            this.source = source;
+            this.remaining = limit;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0 && source.hasNext();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            return source.next();
+        }
+    }
+
+    /**
+     * 在首次迭代时才生成结果的迭代器，使需要读取全部上游输出的操作符在迭代时才执行。
+     */
+    private static class DeferredIterator implements Iterator<String> {
+
+        private final Supplier<Iterator<String>> supplier;
+
+        private Iterator<String> result = null;
+
+        private DeferredIterator(Supplier<Iterator<String>> supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (result == null) {
+                result = supplier.get();
+            }
+            return result.hasNext();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return result.next();
+        }
+    }
+}
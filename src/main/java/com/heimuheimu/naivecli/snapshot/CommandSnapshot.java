@@ -0,0 +1,98 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heimuheimu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.heimuheimu.naivecli.snapshot;
+
+import java.util.List;
+
+/**
+ * 命令输出快照，记录某一时刻命令执行后的输出内容。
+ *
+ * @author heimuheimu
+ */
+public class CommandSnapshot {
+
+    /**
+     * 快照采集时间戳
+     */
+    private final long timestamp;
+
+    /**
+     * 命令内容
+     */
+    private final String command;
+
+    /**
+     * 命令执行后的输出
+     */
+    private final List<String> outputList;
+
+    /**
+     * 构造一个命令输出快照。
+     *
+     * @param timestamp 快照采集时间戳
+     * @param command 命令内容
+     * @param outputList 命令执行后的输出
+     */
+    public CommandSnapshot(long timestamp, String command, List<String> outputList) {
+        this.timestamp = timestamp;
+        this.command = command;
+        this.outputList = outputList;
+    }
+
+    /**
+     * 获得快照采集时间戳。
+     *
+     * @return 快照采集时间戳
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * 获得命令内容。
+     *
+     * @return 命令内容
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * 获得命令执行后的输出。
+     *
+     * @return 命令执行后的输出
+     */
+    public List<String> getOutputList() {
+        return outputList;
+    }
+
+    @Override
+    public String toString() {
+        return "CommandSnapshot{" +
+                "timestamp=" + timestamp +
+                ", command='" + command + '\'' +
+                ", outputList=" + outputList +
+                '}';
+    }
+}
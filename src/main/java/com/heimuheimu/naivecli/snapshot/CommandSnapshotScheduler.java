@@ -0,0 +1,220 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heimuheimu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.heimuheimu.naivecli.snapshot;
+
+import com.heimuheimu.naivecli.command.NaiveCommandExecutor;
+import com.heimuheimu.naivecli.constant.BeanStatusEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 命令输出快照采集器，按指定的时间间隔执行配置的命令，并将输出追加写入 {@link CommandSnapshotStore}。
+ *
+ * <p>
+ * 采集器由 {@code NaiveCommandLineUtilities} 负责初始化和关闭，初始化后将同时注册 {@link HistoryCommand}，用于查询历史快照。
+ * </p>
+ *
+ * <p>
+ * 采集时如果命令被 {@link com.heimuheimu.naivecli.command.NaiveCommandAdmissionController} 拒绝执行，本次不保存该命令的快照。
+ * </p>
+ *
+ * @author heimuheimu
+ */
+public class CommandSnapshotScheduler implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandSnapshotScheduler.class);
+
+    /**
+     * 当前实例所处状态
+     */
+    private BeanStatusEnum state = BeanStatusEnum.UNINITIALIZED;
+
+    /**
+     * 快照存储目录
+     */
+    private final String directory;
+
+    /**
+     * 需要定时采集输出的命令列表
+     */
+    private final List<String> commandList;
+
+    /**
+     * 采集间隔秒数
+     */
+    private final int intervalSeconds;
+
+    /**
+     * 分段数据文件大小
+     */
+    private final int segmentSize;
+
+    /**
+     * 保留的最大分段数量
+     */
+    private final int maxSegments;
+
+    /**
+     * 命令输出快照存储
+     */
+    private volatile CommandSnapshotStore store;
+
+    /**
+     * 定时采集使用的线程池
+     */
+    private ScheduledExecutorService scheduledExecutorService;
+
+    /**
+     * 构造一个命令输出快照采集器，使用默认的分段大小及分段数量。
+     *
+     * @param directory 快照存储目录
+     * @param commandList 需要定时采集输出的命令列表，命令可包含参数及管道
+     * @param intervalSeconds 采集间隔秒数
+     */
+    public CommandSnapshotScheduler(String directory, Collection<String> commandList, int intervalSeconds) {
+        this(directory, commandList, intervalSeconds, CommandSnapshotStore.DEFAULT_SEGMENT_SIZE,
+                CommandSnapshotStore.DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * 构造一个命令输出快照采集器。
+     *
+     * @param directory 快照存储目录
+     * @param commandList 需要定时采集输出的命令列表，命令可包含参数及管道
+     * @param intervalSeconds 采集间隔秒数
+     * @param segmentSize 分段数据文件大小
+     * @param maxSegments 保留的最大分段数量，超过该数量后将删除最早的分段
+     */
+    public CommandSnapshotScheduler(String directory, Collection<String> commandList, int intervalSeconds,
+                                    int segmentSize, int maxSegments) {
+        this.directory = directory;
+        this.commandList = new ArrayList<>(commandList);
+        this.intervalSeconds = intervalSeconds;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * 执行 {@code CommandSnapshotScheduler} 初始化操作，打开快照存储并启动定时采集。
+     *
+     * @param executor 执行采集命令使用的命令执行器
+     */
+    public synchronized void init(NaiveCommandExecutor executor) {
+        if (state == BeanStatusEnum.UNINITIALIZED) {
+            try {
+                store = new CommandSnapshotStore(directory, segmentSize, maxSegments);
+                scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "[CommandSnapshotScheduler]:" + directory);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                scheduledExecutorService.scheduleWithFixedDelay(() -> capture(executor), intervalSeconds,
+                        intervalSeconds, TimeUnit.SECONDS);
+                state = BeanStatusEnum.NORMAL;
+                LOGGER.info("CommandSnapshotScheduler has been initialized. Commands: `{}`. Interval: `{}s`. Directory: `{}`.",
+                        commandList, intervalSeconds, directory);
+            } catch (Exception e) {
+                LOGGER.error("CommandSnapshotScheduler init failed: `" + e.getMessage() + "`. Directory: `" + directory + "`.", e);
+                close();
+            }
+        }
+    }
+
+    /**
+     * 判断当前采集器是否处于正常状态。
+     *
+     * @return 是否处于正常状态
+     */
+    public boolean isActive() {
+        return state == BeanStatusEnum.NORMAL;
+    }
+
+    /**
+     * 获得命令输出快照存储，如果采集器尚未初始化，则返回 {@code null}。
+     *
+     * @return 命令输出快照存储，可能为 {@code null}
+     */
+    public CommandSnapshotStore getStore() {
+        return store;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (state != BeanStatusEnum.CLOSED) {
+            state = BeanStatusEnum.CLOSED;
+            try {
+                if (scheduledExecutorService != null) {
+                    scheduledExecutorService.shutdown();
+                    if (!scheduledExecutorService.awaitTermination(1, TimeUnit.SECONDS)) {
+                        scheduledExecutorService.shutdownNow();
+                    }
+                }
+            } catch (InterruptedException e) {
+                scheduledExecutorService.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            if (store != null) {
+                store.close();
+            }
+            LOGGER.info("CommandSnapshotScheduler has been closed. Directory: `{}`.", directory);
+        }
+    }
+
+    private void capture(NaiveCommandExecutor executor) {
+        for (String command : commandList) {
+            try {
+                long startTime = System.currentTimeMillis();
+                List<String> outputList = executor.executeIfAdmitted(command);
+                if (outputList == null) {
+                    //命令被准入控制器拒绝执行，拒绝信息不是命令输出，不保存快照
+                    LOGGER.warn("Capture snapshot skipped: `command is rejected`. Command: `{}`.", command);
+                    continue;
+                }
+                store.append(command, outputList);
+                LOGGER.debug("Capture snapshot success. Cost: `{} ms`. Command: `{}`.", System.currentTimeMillis() - startTime, command);
+            } catch (Exception e) {
+                LOGGER.error("Capture snapshot failed: `" + e.getMessage() + "`. Command: `" + command + "`.", e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CommandSnapshotScheduler{" +
+                "state=" + state +
+                ", directory='" + directory + '\'' +
+                ", commandList=" + commandList +
+                ", intervalSeconds=" + intervalSeconds +
+                ", store=" + store +
+                '}';
+    }
+}
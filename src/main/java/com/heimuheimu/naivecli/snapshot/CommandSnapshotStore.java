@@ -0,0 +1,530 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heimuheimu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.heimuheimu.naivecli.snapshot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 命令输出快照存储，快照按时间顺序追加写入内存映射文件，文件达到指定大小后滚动生成新的分段。
+ *
+ * <p>
+ * 每个分段由数据文件（.log）和索引文件（.idx）组成，文件名为该分段创建时的时间戳：
+ * <ul>
+ *     <li>数据文件记录格式：[8 字节时间戳][4 字节命令长度][命令内容][4 字节输出长度][输出内容]，输出内容各行以 '\n' 分隔</li>
+ *     <li>索引文件记录格式：[8 字节时间戳][4 字节数据文件位置]，时间戳为 0 表示索引结束</li>
+ * </ul>
+ * 快照时间戳在存储内单调递增，按时间范围查询时通过索引二分查找定位起始位置。分段数量超过上限时，将删除最早的分段，
+ * 并立即释放其内存映射，磁盘空间无需等待 GC 即可回收，正在进行的查询将跳过已删除的分段。
+ * </p>
+ *
+ * <p><strong>说明：</strong>{@code CommandSnapshotStore} 类是线程安全的，写入操作串行执行，查询操作无需加锁。</p>
+ *
+ * @author heimuheimu
+ */
+public class CommandSnapshotStore implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandSnapshotStore.class);
+
+    /**
+     * 默认的分段数据文件大小：64 MB
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * 默认保留的最大分段数量
+     */
+    public static final int DEFAULT_MAX_SEGMENTS = 16;
+
+    private static final String DATA_FILE_SUFFIX = ".log";
+
+    private static final String INDEX_FILE_SUFFIX = ".idx";
+
+    private static final int INDEX_ENTRY_SIZE = 12;
+
+    private static final int RECORD_HEADER_SIZE = 16;
+
+    /**
+     * 平均每条快照占用的数据文件字节数估算值，用于计算索引文件大小
+     */
+    private static final int AVERAGE_RECORD_SIZE = 256;
+
+    /**
+     * 快照存储目录
+     */
+    private final File directory;
+
+    /**
+     * 分段数据文件大小
+     */
+    private final int segmentSize;
+
+    /**
+     * 保留的最大分段数量
+     */
+    private final int maxSegments;
+
+    /**
+     * 分段列表，按时间顺序排列，最后一个分段为当前写入分段
+     */
+    private final CopyOnWriteArrayList<Segment> segmentList = new CopyOnWriteArrayList<>();
+
+    /**
+     * 最后一次写入的快照时间戳
+     */
+    private long lastTimestamp = 0;
+
+    /**
+     * 是否已关闭
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * 构造一个命令输出快照存储，如果存储目录中已存在分段文件，将会被加载。
+     *
+     * @param directory 快照存储目录
+     * @param segmentSize 分段数据文件大小
+     * @param maxSegments 保留的最大分段数量
+     * @throws IOException 如果加载或创建分段文件过程中发生 IO 错误，将抛出此异常
+     */
+    public CommandSnapshotStore(String directory, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize <= RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Invalid segment size: `" + segmentSize + "`.");
+        }
+        this.directory = new File(directory);
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(maxSegments, 1);
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IOException("Create snapshot directory failed: `" + directory + "`.");
+        }
+        File[] indexFiles = this.directory.listFiles((dir, name) -> name.endsWith(INDEX_FILE_SUFFIX));
+        if (indexFiles != null) {
+            List<Long> baseTimestampList = new ArrayList<>();
+            for (File indexFile : indexFiles) {
+                String name = indexFile.getName();
+                try {
+                    baseTimestampList.add(Long.parseLong(name.substring(0, name.length() - INDEX_FILE_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Ignore unknown snapshot index file: `{}`.", indexFile);
+                }
+            }
+            Collections.sort(baseTimestampList);
+            for (long baseTimestamp : baseTimestampList) {
+                Segment segment = new Segment(this.directory, baseTimestamp, 0, 0);
+                segmentList.add(segment);
+                if (segment.entryCount > 0) {
+                    lastTimestamp = segment.getTimestamp(segment.entryCount - 1);
+                }
+            }
+        }
+        LOGGER.info("CommandSnapshotStore has been opened. Segments: `{}`. Directory: `{}`.", segmentList.size(), directory);
+    }
+
+    /**
+     * 追加一条命令输出快照，快照时间戳为当前时间。
+     *
+     * @param command 命令内容
+     * @param outputList 命令执行后的输出
+     * @return 是否写入成功，如果快照大小超过分段大小或存储已关闭，将返回 {@code false}
+     * @throws IOException 如果创建新分段过程中发生 IO 错误，将抛出此异常
+     */
+    public synchronized boolean append(String command, List<String> outputList) throws IOException {
+        if (closed) {
+            return false;
+        }
+        byte[] commandBytes = command.getBytes(StandardCharsets.UTF_8);
+        byte[] outputBytes = String.join("\n", outputList).getBytes(StandardCharsets.UTF_8);
+        int recordSize = RECORD_HEADER_SIZE + commandBytes.length + outputBytes.length;
+        if (recordSize > segmentSize) {
+            LOGGER.error("Append snapshot failed: `snapshot is larger than segment size`. Command: `" + command
+                    + "`. Snapshot size: `" + recordSize + "`. Segment size: `" + segmentSize + "`.");
+            return false;
+        }
+        long timestamp = Math.max(System.currentTimeMillis(), lastTimestamp);
+        Segment activeSegment = segmentList.isEmpty() ? null : segmentList.get(segmentList.size() - 1);
+        if (activeSegment == null || !activeSegment.hasRoom(recordSize)) {
+            if (activeSegment != null) {
+                //分段文件以创建时的时间戳命名，需保证新分段的时间戳大于当前分段
+                timestamp = Math.max(timestamp, activeSegment.baseTimestamp + 1);
+            }
+            activeSegment = rollSegment(timestamp);
+        }
+        activeSegment.append(timestamp, commandBytes, outputBytes);
+        lastTimestamp = timestamp;
+        return true;
+    }
+
+    /**
+     * 查询指定时间范围内的命令输出快照，快照在迭代时才会从文件中读取。
+     *
+     * @param command 命令名称或完整的命令内容，不区分大小写
+     * @param fromTimestamp 起始时间戳（包含）
+     * @param toTimestamp 结束时间戳（包含）
+     * @return 按时间顺序排列的快照迭代器
+     */
+    public Iterator<CommandSnapshot> query(String command, long fromTimestamp, long toTimestamp) {
+        List<Segment> currentSegmentList = new ArrayList<>(segmentList);
+        String lowerCaseCommand = command.toLowerCase();
+        return new Iterator<CommandSnapshot>() {
+
+            private int segmentIndex = findFirstSegment(currentSegmentList, fromTimestamp);
+
+            private int entryIndex = -1;
+
+            private CommandSnapshot nextSnapshot = null;
+
+            @Override
+            public boolean hasNext() {
+                while (nextSnapshot == null && segmentIndex < currentSegmentList.size()) {
+                    Segment segment = currentSegmentList.get(segmentIndex);
+                    if (!segment.acquire()) {
+                        //分段已过期删除，跳过该分段
+                        segmentIndex++;
+                        entryIndex = -1;
+                        continue;
+                    }
+                    try {
+                        if (entryIndex < 0) {
+                            entryIndex = segment.findFirstEntry(fromTimestamp);
+                        }
+                        if (entryIndex < segment.entryCount) {
+                            if (segment.getTimestamp(entryIndex) > toTimestamp) {
+                                segmentIndex = currentSegmentList.size();
+                            } else if (isMatched(segment.readCommand(entryIndex), lowerCaseCommand)) {
+                                nextSnapshot = segment.read(entryIndex++);
+                            } else {
+                                entryIndex++;
+                            }
+                        } else {
+                            segmentIndex++;
+                            entryIndex = -1;
+                        }
+                    } finally {
+                        segment.releaseAcquired();
+                    }
+                }
+                return nextSnapshot != null;
+            }
+
+            @Override
+            public CommandSnapshot next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                CommandSnapshot snapshot = nextSnapshot;
+                nextSnapshot = null;
+                return snapshot;
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            for (Segment segment : segmentList) {
+                segment.close();
+            }
+            LOGGER.info("CommandSnapshotStore has been closed. Directory: `{}`.", directory);
+        }
+    }
+
+    private Segment rollSegment(long baseTimestamp) throws IOException {
+        Segment segment = new Segment(directory, baseTimestamp, segmentSize,
+                Math.max(segmentSize / AVERAGE_RECORD_SIZE, 1) * INDEX_ENTRY_SIZE);
+        segmentList.add(segment);
+        while (segmentList.size() > maxSegments) {
+            Segment expiredSegment = segmentList.remove(0);
+            expiredSegment.delete();
+            LOGGER.info("Expired snapshot segment has been deleted: `{}`.", expiredSegment);
+        }
+        return segment;
+    }
+
+    private static int findFirstSegment(List<Segment> segmentList, long fromTimestamp) {
+        int index = 0;
+        for (int i = 1; i < segmentList.size(); i++) {
+            if (segmentList.get(i).baseTimestamp <= fromTimestamp) {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    private static boolean isMatched(String recordCommand, String lowerCaseCommand) {
+        String lowerCaseRecordCommand = recordCommand.toLowerCase();
+        return lowerCaseRecordCommand.equals(lowerCaseCommand)
+                || lowerCaseRecordCommand.startsWith(lowerCaseCommand + " ");
+    }
+
+    @Override
+    public String toString() {
+        return "CommandSnapshotStore{" +
+                "directory=" + directory +
+                ", segmentSize=" + segmentSize +
+                ", maxSegments=" + maxSegments +
+                ", segments=" + segmentList.size() +
+                ", closed=" + closed +
+                '}';
+    }
+
+    /**
+     * 快照存储分段，由一个数据文件和一个索引文件组成，均通过内存映射进行读写。
+     */
+    private static class Segment {
+
+        private final long baseTimestamp;
+
+        private final File dataFile;
+
+        private final File indexFile;
+
+        private final FileChannel dataChannel;
+
+        private final FileChannel indexChannel;
+
+        private final MappedByteBuffer dataBuffer;
+
+        private final MappedByteBuffer indexBuffer;
+
+        /**
+         * 已写入的快照数量，写入索引后更新，查询时仅读取该数量以内的索引
+         */
+        private volatile int entryCount = 0;
+
+        /**
+         * 数据文件下一次写入的位置，仅在写入时使用
+         */
+        private int writePosition = 0;
+
+        /**
+         * 内存映射读写锁，读取映射内容时持有读锁，释放映射时持有写锁，避免释放后继续访问映射内存
+         */
+        private final ReentrantReadWriteLock mappingLock = new ReentrantReadWriteLock();
+
+        /**
+         * 内存映射是否已释放
+         */
+        private boolean released = false;
+
+        /**
+         * 打开或创建一个分段，如果文件已存在，将使用文件的实际大小并恢复写入位置。
+         */
+        private Segment(File directory, long baseTimestamp, int dataSize, int indexSize) throws IOException {
+            this.baseTimestamp = baseTimestamp;
+            this.dataFile = new File(directory, String.format("%019d", baseTimestamp) + DATA_FILE_SUFFIX);
+            this.indexFile = new File(directory, String.format("%019d", baseTimestamp) + INDEX_FILE_SUFFIX);
+            RandomAccessFile dataRandomAccessFile = new RandomAccessFile(dataFile, "rw");
+            RandomAccessFile indexRandomAccessFile = new RandomAccessFile(indexFile, "rw");
+            this.dataChannel = dataRandomAccessFile.getChannel();
+            this.indexChannel = indexRandomAccessFile.getChannel();
+            long dataLength = Math.max(dataRandomAccessFile.length(), dataSize);
+            long indexLength = Math.max(indexRandomAccessFile.length(), indexSize);
+            this.dataBuffer = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, dataLength);
+            this.indexBuffer = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexLength - indexLength % INDEX_ENTRY_SIZE);
+            int recoveredEntryCount = 0;
+            while ((recoveredEntryCount + 1) * INDEX_ENTRY_SIZE <= indexBuffer.capacity()
+                    && indexBuffer.getLong(recoveredEntryCount * INDEX_ENTRY_SIZE) != 0) {
+                recoveredEntryCount++;
+            }
+            if (recoveredEntryCount > 0) {
+                int lastPosition = getPosition(recoveredEntryCount - 1);
+                int commandLength = dataBuffer.getInt(lastPosition + 8);
+                int outputLength = dataBuffer.getInt(lastPosition + 12 + commandLength);
+                writePosition = lastPosition + RECORD_HEADER_SIZE + commandLength + outputLength;
+            }
+            this.entryCount = recoveredEntryCount;
+        }
+
+        private boolean hasRoom(int recordSize) {
+            return (entryCount + 1) * INDEX_ENTRY_SIZE <= indexBuffer.capacity()
+                    && writePosition + recordSize <= dataBuffer.capacity();
+        }
+
+        private void append(long timestamp, byte[] commandBytes, byte[] outputBytes) {
+            int position = writePosition;
+            dataBuffer.position(position);
+            dataBuffer.putLong(timestamp);
+            dataBuffer.putInt(commandBytes.length);
+            dataBuffer.put(commandBytes);
+            dataBuffer.putInt(outputBytes.length);
+            dataBuffer.put(outputBytes);
+            writePosition = dataBuffer.position();
+            int indexOffset = entryCount * INDEX_ENTRY_SIZE;
+            indexBuffer.putInt(indexOffset + 8, position);
+            indexBuffer.putLong(indexOffset, timestamp);
+            entryCount++;
+        }
+
+        private long getTimestamp(int entryIndex) {
+            return indexBuffer.getLong(entryIndex * INDEX_ENTRY_SIZE);
+        }
+
+        private int getPosition(int entryIndex) {
+            return indexBuffer.getInt(entryIndex * INDEX_ENTRY_SIZE + 8);
+        }
+
+        /**
+         * 获得第一个时间戳大于等于指定时间戳的索引位置，如果不存在，则返回已写入的快照数量。
+         */
+        private int findFirstEntry(long fromTimestamp) {
+            int low = 0;
+            int high = entryCount;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (getTimestamp(middle) < fromTimestamp) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private String readCommand(int entryIndex) {
+            ByteBuffer buffer = dataBuffer.duplicate();
+            buffer.position(getPosition(entryIndex) + 8);
+            byte[] commandBytes = new byte[buffer.getInt()];
+            buffer.get(commandBytes);
+            return new String(commandBytes, StandardCharsets.UTF_8);
+        }
+
+        private CommandSnapshot read(int entryIndex) {
+            ByteBuffer buffer = dataBuffer.duplicate();
+            buffer.position(getPosition(entryIndex));
+            long timestamp = buffer.getLong();
+            byte[] commandBytes = new byte[buffer.getInt()];
+            buffer.get(commandBytes);
+            byte[] outputBytes = new byte[buffer.getInt()];
+            buffer.get(outputBytes);
+            String output = new String(outputBytes, StandardCharsets.UTF_8);
+            List<String> outputList = output.isEmpty() ? new ArrayList<>() : Arrays.asList(output.split("\n", -1));
+            return new CommandSnapshot(timestamp, new String(commandBytes, StandardCharsets.UTF_8), outputList);
+        }
+
+        /**
+         * 获取映射内容的读取权限，如果映射已释放，则返回 {@code false}，获取成功后需调用 {@link #releaseAcquired()}。
+         */
+        private boolean acquire() {
+            mappingLock.readLock().lock();
+            if (released) {
+                mappingLock.readLock().unlock();
+                return false;
+            }
+            return true;
+        }
+
+        private void releaseAcquired() {
+            mappingLock.readLock().unlock();
+        }
+
+        /**
+         * 将映射内容刷新至磁盘，关闭文件，并立即释放内存映射，不依赖 GC 回收映射内存。
+         */
+        private void close() {
+            mappingLock.writeLock().lock();
+            try {
+                if (released) {
+                    return;
+                }
+                released = true;
+                try {
+                    dataBuffer.force();
+                    indexBuffer.force();
+                } catch (Exception e) {
+                    LOGGER.error("Force snapshot segment failed: `" + e.getMessage() + "`. Segment: `" + this + "`.", e);
+                }
+                try {
+                    dataChannel.close();
+                    indexChannel.close();
+                } catch (Exception e) {
+                    LOGGER.error("Close snapshot segment failed: `" + e.getMessage() + "`. Segment: `" + this + "`.", e);
+                }
+                unmap(dataBuffer);
+                unmap(indexBuffer);
+            } finally {
+                mappingLock.writeLock().unlock();
+            }
+        }
+
+        private void delete() {
+            close();
+            if (!dataFile.delete() || !indexFile.delete()) {
+                LOGGER.error("Delete snapshot segment failed. Segment: `{}`.", this);
+            }
+        }
+
+        /**
+         * 释放内存映射，JDK 9 及以上版本使用 {@code sun.misc.Unsafe#invokeCleaner}，JDK 8 使用 {@code DirectByteBuffer#cleaner}，
+         * 如果释放失败，映射内存将在 GC 回收后释放。
+         */
+        private static void unmap(MappedByteBuffer buffer) {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Object unsafe;
+                Method invokeCleanerMethod;
+                try {
+                    invokeCleanerMethod = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                    Field theUnsafeField = unsafeClass.getDeclaredField("theUnsafe");
+                    theUnsafeField.setAccessible(true);
+                    unsafe = theUnsafeField.get(null);
+                } catch (NoSuchMethodException e) {
+                    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                    cleanerMethod.setAccessible(true);
+                    Object cleaner = cleanerMethod.invoke(buffer);
+                    if (cleaner != null) {
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                    }
+                    return;
+                }
+                invokeCleanerMethod.invoke(unsafe, buffer);
+            } catch (Exception e) {
+                LOGGER.warn("Unmap snapshot segment failed, mapping will be released after GC: `{}`.", e.getMessage());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Segment{" +
+                    "dataFile=" + dataFile +
+                    ", entryCount=" + entryCount +
+                    ", writePosition=" + writePosition +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heimuheimu
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.heimuheimu.naivecli.snapshot;
+
+import com.heimuheimu.naivecli.command.NaiveCommand;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * 历史快照查询命令，输出指定命令在某个时间范围内采集的快照，使用方式：{@code history <command> <from> [to]}，
+ * 时间格式为 {@code yyyyMMddHHmmss}，时间范围包含起始时间及结束时间所在的整秒，结束时间默认为当前时间。
+ *
+ * <p>
+ * 命令可包含参数，例如 {@code history stats cache 20171001000000}，末尾一个或两个 14 位数字的参数将作为时间解析，
+ * 其余参数组成命令内容。快照命令与查询命令完全相同，或以查询命令加空格开头时匹配，
+ * 例如 "stats" 可同时匹配 "stats cache" 和 "stats db"，"stats cache" 仅匹配 "stats cache"。
+ * </p>
+ *
+ * @author heimuheimu
+ */
+public class HistoryCommand implements NaiveCommand {
+
+    private static final String TIME_PATTERN = "yyyyMMddHHmmss";
+
+    /**
+     * 命令输出快照存储
+     */
+    private final CommandSnapshotStore store;
+
+    /**
+     * 构造一个历史快照查询命令。
+     *
+     * @param store 命令输出快照存储
+     */
+    public HistoryCommand(CommandSnapshotStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public String getName() {
+        return "history";
+    }
+
+    @Override
+    public String getArgumentDescription() {
+        return "<command> <from:" + TIME_PATTERN + "> [to:" + TIME_PATTERN + "]";
+    }
+
+    @Override
+    public List<String> execute(String[] args) {
+        List<String> outputList = new ArrayList<>();
+        executeLazily(args).forEachRemaining(outputList::add);
+        return outputList;
+    }
+
+    @Override
+    public Iterator<String> executeLazily(String[] args) {
+        int timeArgs = 0;
+        while (timeArgs < 2 && timeArgs < args.length - 1 && isTime(args[args.length - 1 - timeArgs])) {
+            timeArgs++;
+        }
+        if (timeArgs == 0) {
+            return Collections.singletonList("Usage: history " + getArgumentDescription()).iterator();
+        }
+        String command = String.join(" ", Arrays.copyOfRange(args, 0, args.length - timeArgs));
+        long fromTimestamp;
+        long toTimestamp;
+        try {
+            fromTimestamp = parseTime(args[args.length - timeArgs]);
+            //结束时间精确到秒，包含该秒内采集的全部快照
+            toTimestamp = timeArgs == 2 ? parseTime(args[args.length - 1]) + 999 : System.currentTimeMillis();
+        } catch (ParseException e) {
+            return Collections.singletonList("Invalid time: `" + e.getMessage() + "`. Time pattern: " + TIME_PATTERN + ".").iterator();
+        }
+        Iterator<CommandSnapshot> snapshotIterator = store.query(command, fromTimestamp, toTimestamp);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        return new Iterator<String>() {
+
+            private Iterator<String> lineIterator = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!lineIterator.hasNext() && snapshotIterator.hasNext()) {
+                    CommandSnapshot snapshot = snapshotIterator.next();
+                    List<String> lineList = new ArrayList<>(snapshot.getOutputList().size() + 1);
+                    lineList.add("[" + dateFormat.format(new Date(snapshot.getTimestamp())) + "] " + snapshot.getCommand());
+                    lineList.addAll(snapshot.getOutputList());
+                    lineIterator = lineList.iterator();
+                }
+                return lineIterator.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return lineIterator.next();
+            }
+        };
+    }
+
+    private boolean isTime(String argument) {
+        if (argument.length() != TIME_PATTERN.length()) {
+            return false;
+        }
+        for (int i = 0; i < argument.length(); i++) {
+            if (!Character.isDigit(argument.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long parseTime(String time) throws ParseException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(TIME_PATTERN);
+        dateFormat.setLenient(false);
+        return dateFormat.parse(time).getTime();
+    }
+}